@@ -0,0 +1,41 @@
+// AdsEvent.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+/**
+ * An "adsRequest" event to be delivered to the Lua listener.
+ * <p>
+ * Null fields are left out of the Lua event table.
+ */
+public final class AdsEvent {
+    public static final String NAME = "adsRequest";
+
+    // event keys
+    public static final String PHASE_KEY = "phase";
+    public static final String TYPE_KEY = "type";
+    public static final String DATA_KEY = "data";
+
+    public final String phase;
+    public final String type;
+    public final String data;                       // JSON-encoded
+    public final boolean isError;
+    public final String response;
+
+    public AdsEvent(String phase) {
+        this(phase, null, null, false, null);
+    }
+
+    public AdsEvent(String phase, String type, String data) {
+        this(phase, type, data, false, null);
+    }
+
+    public AdsEvent(String phase, String type, String data, boolean isError, String response) {
+        this.phase = phase;
+        this.type = type;
+        this.data = data;
+        this.isError = isError;
+        this.response = response;
+    }
+}
@@ -0,0 +1,60 @@
+// AdsSdk.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+/**
+ * The Unity Ads SDK operations used by the plugin.
+ * <p>
+ * Unless noted otherwise, methods are called on the main UI thread.
+ */
+public interface AdsSdk {
+    String getVersion();
+
+    boolean isInitialized();
+
+    /**
+     * @param perPlacementLoad true to load placements on request with {@link #load}, false to let the SDK load all
+     *                         placements by itself
+     */
+    void initialize(String gameId, boolean testMode, boolean perPlacementLoad, AdsSdkListener listener);
+
+    /**
+     * Replaces the SDK listener. Passing null removes it.
+     * <p>
+     * May be called from any thread.
+     */
+    void setListener(AdsSdkListener listener);
+
+    boolean hasListener();
+
+    /**
+     * May be called from any thread.
+     */
+    boolean isReady(String placementId);
+
+    /**
+     * May be called from any thread.
+     */
+    PlacementState getPlacementState(String placementId);
+
+    /**
+     * Starts loading the placement. Only used if the SDK was initialized with perPlacementLoad.
+     * <p>
+     * May be called from any thread.
+     */
+    void load(String placementId);
+
+    /**
+     * Shows the placement's ad. Called on the UI thread.
+     *
+     * @return Returns false if the ad couldn't be shown, for instance because there is no activity to show it in.
+     */
+    boolean show(String placementId);
+
+    /**
+     * May be called from any thread.
+     */
+    void setHasUserConsent(boolean hasUserConsent);
+}
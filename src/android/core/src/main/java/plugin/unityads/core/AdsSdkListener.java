@@ -0,0 +1,22 @@
+// AdsSdkListener.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+/**
+ * Callbacks received from the Unity Ads SDK. They may arrive on any thread.
+ */
+public interface AdsSdkListener {
+    void onReady(String placementId);
+
+    void onStart(String placementId);
+
+    void onFinish(String placementId, FinishState finishState);
+
+    /**
+     * @param errorCode name of the SDK error code (e.g. "NOT_INITIALIZED")
+     * @param message   message provided by the SDK
+     */
+    void onError(String errorCode, String message);
+}
@@ -0,0 +1,80 @@
+// EventData.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+/**
+ * Builds the JSON strings sent as event.data.
+ */
+final class EventData {
+    // data keys
+    static final String PLACEMENT_ID_KEY = "placementId";
+    static final String ERROR_MSG_KEY = "errorMsg";
+    static final String ERROR_CODE_KEY = "errorCode";
+    static final String STATUS_CODE_KEY = "statusCode";
+    static final String STATUS_INFO_KEY = "statusInfo";
+    static final String SHOW_LATENCY_KEY = "showLatency";
+
+    private final StringBuilder json = new StringBuilder(64).append('{');
+
+    EventData put(String key, Object value) {
+        // like JSONObject, null values are left out
+        if (value == null) {
+            return this;
+        }
+
+        if (json.length() > 1) {
+            json.append(',');
+        }
+        appendQuoted(key);
+        json.append(':');
+        appendQuoted(value.toString());
+
+        return this;
+    }
+
+    EventData put(String key, double value) {
+        if (json.length() > 1) {
+            json.append(',');
+        }
+        appendQuoted(key);
+        json.append(':').append(value);
+
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return json.toString() + '}';
+    }
+
+    private void appendQuoted(String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    json.append('\\').append(c);
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,20 @@
+// EventDispatcher.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+/**
+ * Delivers events to a Lua listener on the Lua runtime's thread.
+ * <p>
+ * Events must be delivered in the order they were dispatched.
+ */
+public interface EventDispatcher {
+    /**
+     * Queues the event for the listener. May be called from any thread.
+     *
+     * @param listenerRef registry reference of the Lua listener
+     * @param event       the event to deliver
+     */
+    void dispatch(int listenerRef, AdsEvent event);
+}
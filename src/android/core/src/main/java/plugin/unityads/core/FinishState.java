@@ -0,0 +1,14 @@
+// FinishState.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+/**
+ * Ways an ad can finish, as reported by the Unity Ads SDK.
+ */
+public enum FinishState {
+    ERROR,
+    SKIPPED,
+    COMPLETED
+}
@@ -0,0 +1,50 @@
+// LuaBridge.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+/**
+ * The subset of a Lua state used by the plugin's Lua API functions.
+ * <p>
+ * Indices follow the Lua C API conventions: positive indices are stack slots counted from the bottom,
+ * negative indices are counted from the top.
+ */
+public interface LuaBridge {
+    /**
+     * Reference value denoting "no reference" (same value as Lua's LUA_REFNIL).
+     */
+    int REFNIL = -1;
+
+    int getTop();
+
+    LuaValueType type(int index);
+
+    String typeName(int index);
+
+    String toString(int index);
+
+    boolean toBoolean(int index);
+
+    double toNumber(int index);
+
+    void pushNil();
+
+    void pushBoolean(boolean value);
+
+    void pushString(String value);
+
+    boolean next(int index);
+
+    void pop(int count);
+
+    /**
+     * Returns true if the value at the given index is a function or a table listener for the given event provider.
+     */
+    boolean isListener(int index, String provider);
+
+    /**
+     * Creates a registry reference to the value at the given index.
+     */
+    int newRef(int index);
+}
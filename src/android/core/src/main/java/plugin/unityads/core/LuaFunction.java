@@ -0,0 +1,28 @@
+// LuaFunction.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+/**
+ * A function of the plugin's Lua library, independent of the Lua runtime binding.
+ */
+public interface LuaFunction {
+    /**
+     * Gets the name of the Lua function as it would appear in the Lua script.
+     *
+     * @return Returns the name of the custom Lua function.
+     */
+    String getName();
+
+    /**
+     * This method is called when the Lua function is called.
+     * <p>
+     * Warning! This method is not called on the main UI thread.
+     *
+     * @param L Bridge to the Lua state.
+     *          Needed to retrieve the Lua function's parameters and to return values back to Lua.
+     * @return Returns the number of values to be returned by the Lua function.
+     */
+    int invoke(LuaBridge L);
+}
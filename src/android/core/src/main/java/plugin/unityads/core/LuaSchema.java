@@ -0,0 +1,368 @@
+// LuaSchema.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precompiled description of a Lua function's arguments, including the keys of an options table.
+ * <p>
+ * {@link #validate} checks the argument count, the argument types and every option in a single pass over the
+ * Lua stack and stores the values in preallocated slots, read back with {@link #getString}, {@link #getBoolean},
+ * {@link #getNumber} and {@link #getStringArray}. Each argument and option has a slot, numbered in declaration
+ * order; callers look them up once with {@link #slot} and then read values by slot. Nothing is allocated on success,
+ * except for the values themselves (strings and string arrays); error messages are only built on failure.
+ * <p>
+ * String arrays must be Lua sequences: tables with the keys 1 to n.
+ * <p>
+ * On failure, the Lua stack is left as is; it is cleared when the Lua function returns.
+ * <p>
+ * A schema is not thread-safe. It is meant to be used on the Lua thread, and the values stay valid until the
+ * next call to {@link #validate}.
+ */
+final class LuaSchema {
+    enum Type {
+        STRING("string"),
+        BOOLEAN("boolean"),
+        NUMBER("number"),
+        LISTENER("function"),
+        OPTIONS("table"),
+        STRING_ARRAY("array of strings");
+
+        final String displayName;
+
+        Type(String displayName) {
+            this.displayName = displayName;
+        }
+    }
+
+    private final String signature;
+
+    // positional arguments, then options (one slot each)
+    private String[] names = new String[0];
+    private Type[] types = new Type[0];
+    private boolean[] required = new boolean[0];
+    private int argumentCount = 0;
+    private int requiredArgumentCount = 0;
+    private int optionsArgument = -1;                   // 0-based position of the options table, -1 if none
+    private String provider = null;                     // event provider for listener arguments
+    private final Map<String, Integer> optionSlots = new HashMap<>();
+
+    // values of the last successful validation
+    private String[] strings = new String[0];
+    private boolean[] booleans = new boolean[0];
+    private double[] numbers = new double[0];
+    private List<?>[] arrays = new List<?>[0];
+    private long present = 0;                           // bit per slot
+
+    LuaSchema(String signature) {
+        this.signature = signature;
+    }
+
+    String getSignature() {
+        return signature;
+    }
+
+    // -------------------------------------------------------------------
+    // definition
+    // -------------------------------------------------------------------
+
+    LuaSchema argument(String name, Type type) {
+        if (argumentCount != requiredArgumentCount) {
+            throw new IllegalStateException("required argument '" + name + "' after an optional one");
+        }
+
+        requiredArgumentCount++;
+        return addArgument(name, type, true);
+    }
+
+    LuaSchema optionalArgument(String name, Type type) {
+        return addArgument(name, type, false);
+    }
+
+    LuaSchema listener(String name, String provider) {
+        this.provider = provider;
+        return argument(name, Type.LISTENER);
+    }
+
+    LuaSchema options(String name) {
+        if (optionsArgument >= 0) {
+            throw new IllegalStateException("only one options table is supported");
+        }
+
+        optionsArgument = argumentCount;
+        return argument(name, Type.OPTIONS);
+    }
+
+    LuaSchema option(String key, Type type) {
+        return addOption(key, type, false);
+    }
+
+    LuaSchema requiredOption(String key, Type type) {
+        return addOption(key, type, true);
+    }
+
+    private LuaSchema addArgument(String name, Type type, boolean isRequired) {
+        if (names.length != argumentCount) {
+            throw new IllegalStateException("arguments must be declared before options");
+        }
+
+        argumentCount++;
+        return addSlot(name, type, isRequired);
+    }
+
+    private LuaSchema addOption(String key, Type type, boolean isRequired) {
+        if (optionsArgument < 0 || type == Type.OPTIONS || type == Type.LISTENER || optionSlots.containsKey(key)) {
+            throw new IllegalStateException("invalid option '" + key + "'");
+        }
+
+        optionSlots.put(key, names.length);
+        return addSlot(key, type, isRequired);
+    }
+
+    private LuaSchema addSlot(String name, Type type, boolean isRequired) {
+        int slot = names.length;
+        if (slot == Long.SIZE) {
+            throw new IllegalStateException("too many arguments and options");
+        }
+
+        names = grow(names);
+        names[slot] = name;
+
+        Type[] newTypes = new Type[slot + 1];
+        System.arraycopy(types, 0, newTypes, 0, slot);
+        newTypes[slot] = type;
+        types = newTypes;
+
+        boolean[] newRequired = new boolean[slot + 1];
+        System.arraycopy(required, 0, newRequired, 0, slot);
+        newRequired[slot] = isRequired;
+        required = newRequired;
+
+        strings = new String[slot + 1];
+        booleans = new boolean[slot + 1];
+        numbers = new double[slot + 1];
+        arrays = new List<?>[slot + 1];
+
+        return this;
+    }
+
+    private static String[] grow(String[] array) {
+        String[] grown = new String[array.length + 1];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+    // -------------------------------------------------------------------
+    // validation
+    // -------------------------------------------------------------------
+
+    /**
+     * Validates the arguments on the Lua stack and extracts their values.
+     *
+     * @return Returns null if the arguments are valid, or else an error message.
+     */
+    String validate(LuaBridge L) {
+        present = 0;
+
+        int nargs = L.getTop();
+        if (nargs < requiredArgumentCount || nargs > argumentCount) {
+            return expectedArgumentsMessage(nargs);
+        }
+
+        for (int slot = 0; slot < nargs; slot++) {
+            int index = slot + 1;
+
+            if (slot == optionsArgument) {
+                String error = validateOptions(L, index);
+                if (error != null) {
+                    return error;
+                }
+            } else if (!extract(L, index, slot)) {
+                return expectedMessage(names[slot], slot, L.typeName(index));
+            }
+        }
+
+        // required options
+        for (int slot = argumentCount; slot < names.length; slot++) {
+            if (required[slot] && !isPresent(slot)) {
+                return names[optionsArgument] + "." + names[slot] + " is required";
+            }
+        }
+
+        return null;
+    }
+
+    private String validateOptions(LuaBridge L, int index) {
+        if (L.type(index) != LuaValueType.TABLE) {
+            return expectedMessage(names[optionsArgument], optionsArgument, L.typeName(index));
+        }
+
+        for (L.pushNil(); L.next(index); L.pop(1)) {
+            if (L.type(-2) != LuaValueType.STRING) {
+                return "Invalid option '" + L.toString(-2) + "'";
+            }
+
+            String key = L.toString(-2);
+            int slot = findOption(key);
+            if (slot < 0) {
+                return "Invalid option '" + key + "'";
+            }
+
+            // by absolute index, extracting an array pushes its own keys and values
+            int valueIndex = L.getTop();
+            if (!extract(L, valueIndex, slot)) {
+                return expectedMessage(names[optionsArgument] + "." + key, slot, L.typeName(valueIndex));
+            }
+        }
+
+        present |= 1L << optionsArgument;
+        return null;
+    }
+
+    private int findOption(String key) {
+        Integer slot = optionSlots.get(key);
+        return slot != null ? slot : -1;
+    }
+
+    // extracts the value at the absolute stack index into the slot, returns false if it has the wrong type
+    private boolean extract(LuaBridge L, int index, int slot) {
+        switch (types[slot]) {
+            case STRING:
+                if (L.type(index) != LuaValueType.STRING) {
+                    return false;
+                }
+                strings[slot] = L.toString(index);
+                break;
+            case BOOLEAN:
+                if (L.type(index) != LuaValueType.BOOLEAN) {
+                    return false;
+                }
+                booleans[slot] = L.toBoolean(index);
+                break;
+            case NUMBER:
+                if (L.type(index) != LuaValueType.NUMBER) {
+                    return false;
+                }
+                numbers[slot] = L.toNumber(index);
+                break;
+            case LISTENER:
+                if (!L.isListener(index, provider)) {
+                    return false;
+                }
+                break;
+            case STRING_ARRAY:
+                List<String> values = extractStringArray(L, index);
+                if (values == null) {
+                    return false;
+                }
+                arrays[slot] = values;
+                break;
+            default:
+                return false;
+        }
+
+        present |= 1L << slot;
+        return true;
+    }
+
+    // returns the strings of the sequence at the absolute stack index, or null if it isn't a sequence of strings
+    private static List<String> extractStringArray(LuaBridge L, int index) {
+        if (L.type(index) != LuaValueType.TABLE) {
+            return null;
+        }
+
+        // next() visits the keys in no particular order, put each value at its key
+        List<Integer> keys = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        for (L.pushNil(); L.next(index); L.pop(1)) {
+            if (L.type(-2) != LuaValueType.NUMBER || L.type(-1) != LuaValueType.STRING) {
+                return null;
+            }
+
+            double key = L.toNumber(-2);
+            if (key < 1 || key != Math.floor(key) || key > Integer.MAX_VALUE) {
+                return null;
+            }
+
+            keys.add((int) key);
+            values.add(L.toString(-1));
+        }
+
+        // keys are distinct, so n keys in 1..n are exactly 1 to n
+        String[] sequence = new String[values.size()];
+        for (int i = 0; i < sequence.length; i++) {
+            int key = keys.get(i);
+            if (key > sequence.length) {
+                return null;
+            }
+            sequence[key - 1] = values.get(i);
+        }
+
+        return Arrays.asList(sequence);
+    }
+
+    private String expectedArgumentsMessage(int nargs) {
+        String expected = requiredArgumentCount == argumentCount
+                ? String.valueOf(argumentCount)
+                : requiredArgumentCount + " to " + argumentCount;
+
+        return "Expected " + expected + (expected.equals("1") ? " argument" : " arguments") + ", got " + nargs;
+    }
+
+    private String expectedMessage(String name, int slot, String typeName) {
+        return name + " expected (" + types[slot].displayName + "), got " + typeName;
+    }
+
+    // -------------------------------------------------------------------
+    // values
+    // -------------------------------------------------------------------
+
+    /**
+     * Returns the slot of the argument or option, to read its value with. Meant to be called once, after the
+     * schema is defined.
+     */
+    int slot(String name) {
+        for (int slot = 0; slot < names.length; slot++) {
+            if (names[slot].equals(name)) {
+                return slot;
+            }
+        }
+
+        throw new IllegalArgumentException("unknown argument or option '" + name + "'");
+    }
+
+    private boolean isPresent(int slot) {
+        return (present & (1L << slot)) != 0;
+    }
+
+    /**
+     * Returns true if the argument or option was passed.
+     */
+    boolean has(int slot) {
+        return isPresent(slot);
+    }
+
+    String getString(int slot) {
+        return isPresent(slot) ? strings[slot] : null;
+    }
+
+    boolean getBoolean(int slot, boolean defaultValue) {
+        return isPresent(slot) ? booleans[slot] : defaultValue;
+    }
+
+    double getNumber(int slot, double defaultValue) {
+        return isPresent(slot) ? numbers[slot] : defaultValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    List<String> getStringArray(int slot) {
+        return isPresent(slot) ? (List<String>) arrays[slot] : null;
+    }
+}
@@ -0,0 +1,21 @@
+// LuaValueType.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+/**
+ * Lua value types as seen through a {@link LuaBridge}.
+ */
+public enum LuaValueType {
+    NONE,
+    NIL,
+    BOOLEAN,
+    LIGHTUSERDATA,
+    NUMBER,
+    STRING,
+    TABLE,
+    FUNCTION,
+    USERDATA,
+    THREAD
+}
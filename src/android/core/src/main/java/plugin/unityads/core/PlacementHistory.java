@@ -0,0 +1,297 @@
+// PlacementHistory.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-placement fill rate, time to ready and show rate, kept across app launches.
+ * <p>
+ * A load cycle starts when a placement starts loading (initialization, an explicit load or the reload after a show)
+ * and ends with either a fill (the SDK reports the placement ready) or a no fill (the placement state is NO_FILL).
+ * The state is kept in a {@link PlacementRegistry}, so only the most recently used placements are remembered.
+ * Methods may be called from any thread.
+ */
+final class PlacementHistory {
+    private static final String FILE_HEADER = "# plugin.unityads placement history v1";
+
+    // weight of the newest sample in the time to ready moving average
+    private static final double TIME_TO_READY_WEIGHT = 0.3;
+
+    // placements with at least this many load outcomes and a lower fill rate rarely fill
+    private static final int MIN_LOAD_OUTCOMES = 4;
+    private static final double LOW_FILL_RATE = 0.25;
+
+    private final PlacementRegistry registry;
+
+    PlacementHistory(PlacementRegistry registry) {
+        this.registry = registry;
+    }
+
+    // -------------------------------------------------------------------
+    // recording
+    // -------------------------------------------------------------------
+
+    /**
+     * Starts a load cycle for the placement, unless one is already pending.
+     */
+    void onLoadStarted(String placementId, long nowNanos) {
+        synchronized (registry) {
+            int handle = registry.get(placementId);
+            if (registry.getLoadStartedNanos(handle) == 0) {
+                registry.setLoadStartedNanos(handle, nowNanos);
+            }
+        }
+    }
+
+    /**
+     * Called when the SDK is initialized.
+     *
+     * @param autoLoad true if the SDK loads all placements by itself, false if they are loaded on request
+     */
+    void onSessionStarted(long nowNanos, boolean autoLoad) {
+        // when the SDK loads all placements by itself, placements first seen later have been loading since then
+        registry.resetLoadCycles(autoLoad ? nowNanos : 0);
+    }
+
+    void onFill(String placementId, long nowNanos) {
+        synchronized (registry) {
+            int handle = registry.get(placementId);
+            long loadStartedNanos = registry.getLoadStartedNanos(handle);
+            if (loadStartedNanos == 0) {
+                // ready reported again without a new load, nothing to measure
+                return;
+            }
+
+            double elapsedMillis = (nowNanos - loadStartedNanos) / 1e6;
+            double timeToReadyMillis = registry.getTimeToReadyMillis(handle);
+            if (timeToReadyMillis < 0) {
+                timeToReadyMillis = elapsedMillis;
+            } else {
+                timeToReadyMillis += TIME_TO_READY_WEIGHT * (elapsedMillis - timeToReadyMillis);
+            }
+
+            registry.addFill(handle, timeToReadyMillis);
+        }
+    }
+
+    /**
+     * Ends the pending load cycle of the placement with a no fill.
+     *
+     * @return Returns true if a load cycle was pending.
+     */
+    boolean onNoFill(String placementId) {
+        synchronized (registry) {
+            int handle = registry.find(placementId);
+            if (handle == PlacementRegistry.NO_HANDLE || registry.getLoadStartedNanos(handle) == 0) {
+                return false;
+            }
+
+            registry.get(placementId);
+            registry.addNoFill(handle);
+            return true;
+        }
+    }
+
+    /**
+     * Ends the pending load cycle of the placement without an outcome, for placements that can't be loaded.
+     *
+     * @return Returns true if a load cycle was pending.
+     */
+    boolean onLoadCancelled(String placementId) {
+        synchronized (registry) {
+            int handle = registry.find(placementId);
+            if (handle == PlacementRegistry.NO_HANDLE || registry.getLoadStartedNanos(handle) == 0) {
+                return false;
+            }
+
+            registry.setLoadStartedNanos(handle, 0);
+            return true;
+        }
+    }
+
+    void onShow(String placementId) {
+        synchronized (registry) {
+            registry.addShow(registry.get(placementId));
+        }
+    }
+
+    /**
+     * Returns the placements with a pending load cycle.
+     */
+    List<String> getLoadingPlacements() {
+        List<String> loading = new ArrayList<>();
+
+        synchronized (registry) {
+            for (int handle = registry.getOldest(); handle != PlacementRegistry.NO_HANDLE; handle = registry.getNewer(handle)) {
+                if (registry.getLoadStartedNanos(handle) != 0) {
+                    loading.add(registry.getPlacementId(handle));
+                }
+            }
+        }
+
+        return loading;
+    }
+
+    // -------------------------------------------------------------------
+    // prioritization
+    // -------------------------------------------------------------------
+
+    // expected chance that loading the placement results in a shown ad. Unknown placements score 0.25
+    private double score(int handle) {
+        if (handle == PlacementRegistry.NO_HANDLE) {
+            return 0.25;
+        }
+
+        int fills = registry.getFills(handle);
+
+        // add-one smoothing, so a placement isn't written off after a single sample
+        double fillRate = (fills + 1.0) / (fills + registry.getNoFills(handle) + 2.0);
+        double showRate = Math.min(1.0, (registry.getShows(handle) + 1.0) / (fills + 2.0));
+        return fillRate * showRate;
+    }
+
+    boolean isRarelyFilled(String placementId) {
+        synchronized (registry) {
+            int handle = registry.find(placementId);
+            if (handle == PlacementRegistry.NO_HANDLE) {
+                return false;
+            }
+
+            int fills = registry.getFills(handle);
+            int outcomes = fills + registry.getNoFills(handle);
+            return outcomes >= MIN_LOAD_OUTCOMES && fills < LOW_FILL_RATE * outcomes;
+        }
+    }
+
+    /**
+     * Returns the placements ordered by how likely they are to be filled and shown, best first.
+     * Ties go to the placement that gets ready faster.
+     */
+    List<String> rank(List<String> placementIds) {
+        final Map<String, Double> scores = new HashMap<>();
+        final Map<String, Double> timesToReady = new HashMap<>();
+
+        synchronized (registry) {
+            for (String placementId : placementIds) {
+                int handle = registry.find(placementId);
+                scores.put(placementId, score(handle));
+                double timeToReadyMillis = handle != PlacementRegistry.NO_HANDLE ? registry.getTimeToReadyMillis(handle) : -1;
+                timesToReady.put(placementId, timeToReadyMillis >= 0 ? timeToReadyMillis : Double.MAX_VALUE);
+            }
+        }
+
+        List<String> ranked = new ArrayList<>(placementIds);
+        Collections.sort(ranked, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                int byScore = Double.compare(scores.get(b), scores.get(a));
+                return byScore != 0 ? byScore : Double.compare(timesToReady.get(a), timesToReady.get(b));
+            }
+        });
+
+        return ranked;
+    }
+
+    // -------------------------------------------------------------------
+    // persistence
+    // -------------------------------------------------------------------
+
+    /**
+     * Merges the history stored in the file. A missing or unreadable file leaves the history unchanged.
+     */
+    void read(File file) {
+        if (!file.isFile()) {
+            return;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            if (!FILE_HEADER.equals(reader.readLine())) {
+                return;
+            }
+
+            // placements are stored least recently used first, the registry keeps the last ones if it's too small
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length != 5) {
+                    continue;
+                }
+
+                synchronized (registry) {
+                    int handle = registry.get(fields[0]);
+                    registry.restore(handle, Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                            Integer.parseInt(fields[3]), Double.parseDouble(fields[4]));
+                }
+            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the history to the file, replacing it.
+     */
+    void write(File file) {
+        // write to a temporary file first, so an interrupted write doesn't lose the previous history
+        File tempFile = new File(file.getPath() + ".tmp");
+
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8");
+            writer.write(FILE_HEADER);
+            writer.write('\n');
+
+            synchronized (registry) {
+                for (int handle = registry.getOldest(); handle != PlacementRegistry.NO_HANDLE; handle = registry.getNewer(handle)) {
+                    String placementId = registry.getPlacementId(handle);
+                    if (placementId.indexOf('\t') >= 0 || placementId.indexOf('\n') >= 0) {
+                        continue;
+                    }
+
+                    writer.write(placementId + '\t' + registry.getFills(handle) + '\t' + registry.getNoFills(handle) + '\t'
+                            + registry.getShows(handle) + '\t' + registry.getTimeToReadyMillis(handle) + '\n');
+                }
+            }
+            writer.close();
+            writer = null;
+
+            if (!tempFile.renameTo(file)) {
+                file.delete();
+                tempFile.renameTo(file);
+            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+}
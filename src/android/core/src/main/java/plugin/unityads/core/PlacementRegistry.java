@@ -0,0 +1,383 @@
+// PlacementRegistry.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+import java.util.Arrays;
+
+/**
+ * Bounded store of per-placement state.
+ * <p>
+ * Placement IDs are interned into handles, indices into primitive arrays holding the state of the placement.
+ * IDs are found through an open addressing hash table (linear probing). The arrays grow as placements are added,
+ * up to a capped number of placements: when a new placement is added to a full registry, the least recently used
+ * one is evicted and its handle is reused, so apps creating placement IDs on the fly don't grow the heap without
+ * bound.
+ * <p>
+ * Methods are synchronized on the registry. Handles are only valid while the lock is held, callers doing
+ * several operations on a handle synchronize on the registry themselves. The state of a placement is read and
+ * written by handle through accessors, since adding a placement may replace the arrays holding it.
+ */
+final class PlacementRegistry {
+    static final int NO_HANDLE = -1;
+
+    // arrays start at this length and double as placements are added, up to the capacity
+    private static final int INITIAL_LENGTH = 16;
+
+    private int capacity;
+    private int size = 0;
+
+    // hash table of handle + 1, 0 for empty slots. At most half full
+    private int[] slots;
+
+    // recency list, most recently used first
+    private int[] newer;
+    private int[] older;
+    private int newest = NO_HANDLE;
+    private int oldest = NO_HANDLE;
+
+    // per-placement state, indexed by handle
+    private String[] placementIds;
+    private String[] placementJSON;                     // built on first use
+    private int[] fills;
+    private int[] noFills;
+    private int[] shows;
+    private double[] timeToReadyMillis;                 // -1 until the first fill
+    private long[] loadStartedNanos;                    // 0 when no load cycle is pending
+
+    private long initialLoadStartedNanos = 0;           // load start of new placements
+
+    PlacementRegistry(int capacity) {
+        checkCapacity(capacity);
+        this.capacity = capacity;
+        allocate(Math.min(capacity, INITIAL_LENGTH));
+    }
+
+    private static void checkCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+    }
+
+    private void allocate(int length) {
+        size = 0;
+        slots = new int[tableSize(length)];
+        newer = new int[length];
+        older = new int[length];
+        newest = NO_HANDLE;
+        oldest = NO_HANDLE;
+        placementIds = new String[length];
+        placementJSON = new String[length];
+        fills = new int[length];
+        noFills = new int[length];
+        shows = new int[length];
+        timeToReadyMillis = new double[length];
+        loadStartedNanos = new long[length];
+    }
+
+    private static int tableSize(int length) {
+        return Integer.highestOneBit(length) << 2;
+    }
+
+    // makes room for more placements, handles stay the same
+    private void grow() {
+        int length = (int) Math.min(capacity, placementIds.length * 2L);
+
+        newer = Arrays.copyOf(newer, length);
+        older = Arrays.copyOf(older, length);
+        placementIds = Arrays.copyOf(placementIds, length);
+        placementJSON = Arrays.copyOf(placementJSON, length);
+        fills = Arrays.copyOf(fills, length);
+        noFills = Arrays.copyOf(noFills, length);
+        shows = Arrays.copyOf(shows, length);
+        timeToReadyMillis = Arrays.copyOf(timeToReadyMillis, length);
+        loadStartedNanos = Arrays.copyOf(loadStartedNanos, length);
+
+        slots = new int[tableSize(length)];
+        for (int handle = 0; handle < size; handle++) {
+            insertSlot(handle);
+        }
+    }
+
+    /**
+     * Changes the maximum number of placements, evicting the least recently used ones if there are too many.
+     */
+    synchronized void setCapacity(int capacity) {
+        checkCapacity(capacity);
+        if (size <= capacity) {
+            // arrays longer than the new capacity are left as they are, they won't grow anymore
+            this.capacity = capacity;
+            return;
+        }
+
+        String[] oldPlacementIds = placementIds;
+        String[] oldPlacementJSON = placementJSON;
+        int[] oldFills = fills;
+        int[] oldNoFills = noFills;
+        int[] oldShows = shows;
+        double[] oldTimeToReadyMillis = timeToReadyMillis;
+        long[] oldLoadStartedNanos = loadStartedNanos;
+        int[] oldNewer = newer;
+        int oldOldest = oldest;
+        int skip = size - capacity;
+
+        this.capacity = capacity;
+        allocate(Math.min(capacity, INITIAL_LENGTH));
+
+        // add the kept placements oldest first, so their order is kept
+        for (int old = oldOldest; old != NO_HANDLE; old = oldNewer[old]) {
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+
+            int handle = add(oldPlacementIds[old]);
+            placementJSON[handle] = oldPlacementJSON[old];
+            fills[handle] = oldFills[old];
+            noFills[handle] = oldNoFills[old];
+            shows[handle] = oldShows[old];
+            timeToReadyMillis[handle] = oldTimeToReadyMillis[old];
+            loadStartedNanos[handle] = oldLoadStartedNanos[old];
+        }
+    }
+
+    // -------------------------------------------------------------------
+    // lookup
+    // -------------------------------------------------------------------
+
+    private static int hash(String placementId) {
+        int h = placementId.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the handle of the placement, or NO_HANDLE if it isn't in the registry. Doesn't count as a use.
+     */
+    synchronized int find(String placementId) {
+        int mask = slots.length - 1;
+        for (int slot = hash(placementId) & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                return NO_HANDLE;
+            }
+            if (placementIds[entry - 1].equals(placementId)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the handle of the placement, adding it if needed, and marks it as the most recently used.
+     * A new placement starts with no fills and no shows, see {@link #resetLoadCycles} for its load cycle.
+     */
+    synchronized int get(String placementId) {
+        int handle = find(placementId);
+        if (handle == NO_HANDLE) {
+            return add(placementId);
+        }
+
+        if (handle != newest) {
+            unlink(handle);
+            linkNewest(handle);
+        }
+
+        return handle;
+    }
+
+    private int add(String placementId) {
+        int handle;
+        if (size == capacity) {
+            // evict the least recently used placement and reuse its handle
+            handle = oldest;
+            unlink(handle);
+            removeSlot(handle);
+        } else {
+            if (size == placementIds.length) {
+                grow();
+            }
+            handle = size++;
+        }
+
+        placementIds[handle] = placementId;
+        placementJSON[handle] = null;
+        fills[handle] = 0;
+        noFills[handle] = 0;
+        shows[handle] = 0;
+        timeToReadyMillis[handle] = -1;
+        loadStartedNanos[handle] = initialLoadStartedNanos;
+
+        insertSlot(handle);
+        linkNewest(handle);
+        return handle;
+    }
+
+    private void insertSlot(int handle) {
+        int mask = slots.length - 1;
+        int slot = hash(placementIds[handle]) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = handle + 1;
+    }
+
+    // removes the handle from the hash table, moving back the entries probed past it
+    private void removeSlot(int handle) {
+        int mask = slots.length - 1;
+        int slot = hash(placementIds[handle]) & mask;
+        while (slots[slot] != handle + 1) {
+            slot = (slot + 1) & mask;
+        }
+
+        for (int next = (slot + 1) & mask; slots[next] != 0; next = (next + 1) & mask) {
+            int home = hash(placementIds[slots[next] - 1]) & mask;
+
+            // an entry can fill the hole unless its home slot lies after the hole, up to its own slot
+            boolean stays = slot <= next ? slot < home && home <= next : slot < home || home <= next;
+            if (!stays) {
+                slots[slot] = slots[next];
+                slot = next;
+            }
+        }
+
+        slots[slot] = 0;
+    }
+
+    private void unlink(int handle) {
+        int n = newer[handle];
+        int o = older[handle];
+
+        if (n == NO_HANDLE) {
+            newest = o;
+        } else {
+            older[n] = o;
+        }
+
+        if (o == NO_HANDLE) {
+            oldest = n;
+        } else {
+            newer[o] = n;
+        }
+    }
+
+    private void linkNewest(int handle) {
+        newer[handle] = NO_HANDLE;
+        older[handle] = newest;
+
+        if (newest == NO_HANDLE) {
+            oldest = handle;
+        } else {
+            newer[newest] = handle;
+        }
+        newest = handle;
+    }
+
+    // -------------------------------------------------------------------
+    // iteration
+    // -------------------------------------------------------------------
+
+    /**
+     * Returns the least recently used handle, or NO_HANDLE if the registry is empty.
+     */
+    synchronized int getOldest() {
+        return oldest;
+    }
+
+    /**
+     * Returns the next more recently used handle, or NO_HANDLE after the most recently used one.
+     */
+    synchronized int getNewer(int handle) {
+        return newer[handle];
+    }
+
+    synchronized String getPlacementId(int handle) {
+        return placementIds[handle];
+    }
+
+    // -------------------------------------------------------------------
+    // placement state
+    // -------------------------------------------------------------------
+
+    /**
+     * Returns the event data naming the placement. Built once per placement and marks it as used.
+     */
+    synchronized String getPlacementJSON(String placementId) {
+        int handle = get(placementId);
+        if (placementJSON[handle] == null) {
+            placementJSON[handle] = new EventData()
+                    .put(EventData.PLACEMENT_ID_KEY, placementId)
+                    .toString();
+        }
+
+        return placementJSON[handle];
+    }
+
+    synchronized int getFills(int handle) {
+        return fills[handle];
+    }
+
+    synchronized int getNoFills(int handle) {
+        return noFills[handle];
+    }
+
+    synchronized int getShows(int handle) {
+        return shows[handle];
+    }
+
+    /**
+     * Returns the moving average of the time to ready, or -1 if the placement was never filled.
+     */
+    synchronized double getTimeToReadyMillis(int handle) {
+        return timeToReadyMillis[handle];
+    }
+
+    /**
+     * Returns the start of the pending load cycle, or 0 if there is none.
+     */
+    synchronized long getLoadStartedNanos(int handle) {
+        return loadStartedNanos[handle];
+    }
+
+    synchronized void setLoadStartedNanos(int handle, long nanos) {
+        loadStartedNanos[handle] = nanos;
+    }
+
+    /**
+     * Counts a fill, ending the pending load cycle.
+     */
+    synchronized void addFill(int handle, double timeToReadyMillis) {
+        fills[handle]++;
+        this.timeToReadyMillis[handle] = timeToReadyMillis;
+        loadStartedNanos[handle] = 0;
+    }
+
+    /**
+     * Counts a no fill, ending the pending load cycle.
+     */
+    synchronized void addNoFill(int handle) {
+        noFills[handle]++;
+        loadStartedNanos[handle] = 0;
+    }
+
+    synchronized void addShow(int handle) {
+        shows[handle]++;
+    }
+
+    /**
+     * Sets the counts of a placement, as read from the stored history.
+     */
+    synchronized void restore(int handle, int fills, int noFills, int shows, double timeToReadyMillis) {
+        this.fills[handle] = fills;
+        this.noFills[handle] = noFills;
+        this.shows[handle] = shows;
+        this.timeToReadyMillis[handle] = timeToReadyMillis;
+    }
+
+    /**
+     * Sets the load start of every placement, including placements added later, 0 for no pending load cycle.
+     */
+    synchronized void resetLoadCycles(long nanos) {
+        initialLoadStartedNanos = nanos;
+        Arrays.fill(loadStartedNanos, 0, size, nanos);
+    }
+}
@@ -0,0 +1,16 @@
+// PlacementState.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+/**
+ * Placement states reported by the Unity Ads SDK.
+ */
+public enum PlacementState {
+    READY,
+    NOT_AVAILABLE,
+    DISABLED,
+    WAITING,
+    NO_FILL
+}
@@ -0,0 +1,42 @@
+// Platform.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+import java.io.File;
+
+/**
+ * Services of the host application the plugin runs in.
+ */
+public interface Platform {
+    /**
+     * Posts the runnable to the main UI thread. It is dropped if there is no activity to run it on.
+     */
+    void runOnUiThread(Runnable runnable);
+
+    /**
+     * Posts the runnable at the front of the main UI thread's queue, ahead of work already waiting there.
+     */
+    void runOnUiThreadAtFront(Runnable runnable);
+
+    /**
+     * Posts the runnable to the main UI thread, to run after the given delay.
+     */
+    void runOnUiThreadDelayed(Runnable runnable, long delayMillis);
+
+    /**
+     * Returns the app's documents directory (system.DocumentsDirectory in Lua).
+     */
+    File getDocumentsDirectory();
+
+    /**
+     * Returns a private directory for state the plugin keeps across app launches.
+     */
+    File getFilesDirectory();
+
+    /**
+     * Writes a message to the device console.
+     */
+    void log(String message);
+}
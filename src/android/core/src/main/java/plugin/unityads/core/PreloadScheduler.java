@@ -0,0 +1,198 @@
+// PreloadScheduler.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides the order in which the placements passed to init() are loaded.
+ * <p>
+ * The placements most likely to be filled and shown (see {@link PlacementHistory}) are warmed right after
+ * initialization. The others, including those that rarely fill, are deferred until every warm placement has
+ * settled (filled, reported no fill or turned out to be disabled or unavailable), until the warm-up times out,
+ * or until Lua asks for one of them. A placement whose load ended without a fill is loaded again when Lua asks for
+ * it, once {@link #RELOAD_BACKOFF_MILLIS} have passed. Methods may be called from any thread.
+ */
+final class PreloadScheduler {
+    // number of placements loaded right away
+    static final int WARM_PLACEMENTS = 2;
+
+    // deferred placements are loaded after this time even if a warm placement never settles
+    static final long WARM_UP_TIMEOUT_MILLIS = 10000;
+
+    // a placement that wasn't filled is loaded again on request, but not before this time
+    static final long RELOAD_BACKOFF_MILLIS = 5000;
+
+    private final AdsSdk sdk;
+    private final PlacementHistory history;
+    private final Platform platform;
+
+    private final Set<String> placements = new HashSet<>();     // all placements loaded on request
+    private final Set<String> warming = new HashSet<>();        // warm placements not yet filled or no fill
+    private final List<String> deferred = new ArrayList<>();    // in load order
+    private final Set<String> reloadable = new HashSet<>();     // not filled, loaded again on request
+    private int warmUp = 0;                                     // incremented by start(), to ignore stale timeouts
+
+    PreloadScheduler(AdsSdk sdk, PlacementHistory history, Platform platform) {
+        this.sdk = sdk;
+        this.history = history;
+        this.platform = platform;
+    }
+
+    /**
+     * Splits the placements into warm and deferred ones and starts loading the warm ones.
+     */
+    void start(List<String> placementIds) {
+        List<String> warm = new ArrayList<>();
+        final int currentWarmUp;
+
+        synchronized (this) {
+            currentWarmUp = ++warmUp;
+            placements.clear();
+            warming.clear();
+            deferred.clear();
+            reloadable.clear();
+            placements.addAll(placementIds);
+
+            for (String placementId : history.rank(placementIds)) {
+                if (warm.size() < WARM_PLACEMENTS && !history.isRarelyFilled(placementId)) {
+                    warm.add(placementId);
+                } else {
+                    deferred.add(placementId);
+                }
+            }
+
+            // always warm at least one placement
+            if (warm.isEmpty() && !deferred.isEmpty()) {
+                warm.add(deferred.remove(0));
+            }
+
+            warming.addAll(warm);
+        }
+
+        load(warm);
+
+        platform.runOnUiThreadDelayed(new Runnable() {
+            @Override
+            public void run() {
+                onWarmUpTimeout(currentWarmUp);
+            }
+        }, WARM_UP_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Forgets the placements, when the runtime that passed them exits. Pending warm-up and reload timers are ignored.
+     */
+    synchronized void stop() {
+        warmUp++;
+        placements.clear();
+        warming.clear();
+        deferred.clear();
+        reloadable.clear();
+    }
+
+    /**
+     * Called when a placement was filled, or won't get ready without a new load.
+     */
+    void onSettled(String placementId) {
+        List<String> released = null;
+
+        synchronized (this) {
+            if (warming.remove(placementId) && warming.isEmpty()) {
+                released = new ArrayList<>(deferred);
+                deferred.clear();
+            }
+        }
+
+        if (released != null) {
+            load(released);
+        }
+    }
+
+    /**
+     * Called when the load of a placement ended without a fill: no fill, or disabled or unavailable.
+     */
+    void onUnfilled(final String placementId) {
+        onSettled(placementId);
+
+        synchronized (this) {
+            if (!placements.contains(placementId)) {
+                return;
+            }
+        }
+
+        platform.runOnUiThreadDelayed(new Runnable() {
+            @Override
+            public void run() {
+                onReloadBackoff(placementId);
+            }
+        }, RELOAD_BACKOFF_MILLIS);
+    }
+
+    private synchronized void onReloadBackoff(String placementId) {
+        if (placements.contains(placementId)) {
+            reloadable.add(placementId);
+        }
+    }
+
+    // releases the deferred placements if the warm-up they wait for is still going on
+    private void onWarmUpTimeout(int timedOutWarmUp) {
+        List<String> released;
+
+        synchronized (this) {
+            if (timedOutWarmUp != warmUp || deferred.isEmpty()) {
+                return;
+            }
+
+            warming.clear();
+            released = new ArrayList<>(deferred);
+            deferred.clear();
+        }
+
+        load(released);
+    }
+
+    /**
+     * Called when Lua asks for a placement that isn't ready. Loads it now if it was deferred, or again if it
+     * wasn't filled.
+     */
+    void onRequested(String placementId) {
+        synchronized (this) {
+            if (!deferred.remove(placementId) && !reloadable.remove(placementId)) {
+                return;
+            }
+        }
+
+        load(placementId);
+    }
+
+    /**
+     * Called when an ad finished. Placements loaded on request have to be loaded again after a show.
+     */
+    void onFinished(String placementId) {
+        synchronized (this) {
+            if (!placements.contains(placementId) || deferred.contains(placementId)) {
+                return;
+            }
+            reloadable.remove(placementId);
+        }
+
+        load(placementId);
+    }
+
+    private void load(List<String> placementIds) {
+        for (String placementId : placementIds) {
+            load(placementId);
+        }
+    }
+
+    private void load(String placementId) {
+        history.onLoadStarted(placementId, System.nanoTime());
+        sdk.load(placementId);
+    }
+}
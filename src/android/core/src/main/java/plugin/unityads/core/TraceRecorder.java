@@ -0,0 +1,209 @@
+// TraceRecorder.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Records plugin activity as spans into a fixed-size ring buffer and exports them in the
+ * Chrome trace-event JSON format (load the output in chrome://tracing or https://ui.perfetto.dev).
+ * <p>
+ * Recording is off by default. While disabled, {@link #begin()} returns 0 and {@link #end} returns
+ * immediately, so instrumented code paths only pay for a volatile read.
+ * Enabling recording discards the events of the previous recording. Once the buffer is full the oldest
+ * events are overwritten.
+ */
+public final class TraceRecorder {
+    // event categories
+    public static final String CATEGORY_LUA = "lua";
+    public static final String CATEGORY_UI_THREAD = "uiThread";
+    public static final String CATEGORY_SDK = "sdk";
+    public static final String CATEGORY_RUNTIME = "runtime";
+
+    private static final char PHASE_COMPLETE = 'X';
+    private static final char PHASE_INSTANT = 'i';
+
+    private final int capacity;
+    private final long originNanos = System.nanoTime();
+
+    // ring buffer (one slot per event)
+    private final char[] phases;
+    private final String[] categories;
+    private final String[] names;
+    private final String[] details;
+    private final long[] startNanos;
+    private final long[] durationNanos;
+    private final long[] threadIds;
+    private final String[] threadNames;
+
+    private int nextIndex = 0;
+    private int count = 0;
+    private volatile boolean enabled = false;
+
+    public TraceRecorder(int capacity) {
+        this.capacity = capacity;
+        phases = new char[capacity];
+        categories = new String[capacity];
+        names = new String[capacity];
+        details = new String[capacity];
+        startNanos = new long[capacity];
+        durationNanos = new long[capacity];
+        threadIds = new long[capacity];
+        threadNames = new String[capacity];
+    }
+
+    public synchronized void setEnabled(boolean enabled) {
+        // a new recording starts with an empty buffer
+        if (enabled && !this.enabled) {
+            clear();
+        }
+
+        this.enabled = enabled;
+    }
+
+    // returns a start token for end(), or 0 when tracing is disabled
+    public long begin() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    // records a span that started at the token returned by begin() and ends now on the calling thread
+    public void end(String category, String name, long beginNanos) {
+        end(category, name, beginNanos, null);
+    }
+
+    public void end(String category, String name, long beginNanos, String detail) {
+        if (beginNanos == 0L || !enabled) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        record(PHASE_COMPLETE, category, name, detail, beginNanos, now - beginNanos);
+    }
+
+    // records a zero-length event (e.g. an SDK callback)
+    public void mark(String category, String name, String detail) {
+        if (!enabled) {
+            return;
+        }
+
+        record(PHASE_INSTANT, category, name, detail, System.nanoTime(), 0L);
+    }
+
+    private void clear() {
+        nextIndex = 0;
+        count = 0;
+        Arrays.fill(categories, null);
+        Arrays.fill(names, null);
+        Arrays.fill(details, null);
+        Arrays.fill(threadNames, null);
+    }
+
+    private synchronized void record(char phase, String category, String name, String detail, long start, long duration) {
+        Thread thread = Thread.currentThread();
+        int i = nextIndex;
+
+        phases[i] = phase;
+        categories[i] = category;
+        names[i] = name;
+        details[i] = detail;
+        startNanos[i] = start;
+        durationNanos[i] = duration;
+        threadIds[i] = thread.getId();
+        threadNames[i] = thread.getName();
+
+        nextIndex = (i + 1) % capacity;
+        if (count < capacity) {
+            count++;
+        }
+    }
+
+    /**
+     * Serializes the buffered events, oldest first, as a Chrome trace-event JSON object.
+     */
+    public synchronized String toJSON() {
+        StringBuilder json = new StringBuilder(128 + count * 112);
+        json.append("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+
+        Set<Long> namedThreads = new HashSet<>();
+        int first = (nextIndex - count + capacity) % capacity;
+        boolean separator = false;
+
+        for (int n = 0; n < count; n++) {
+            int i = (first + n) % capacity;
+
+            // thread name metadata, once per thread
+            if (namedThreads.add(threadIds[i])) {
+                if (separator) {
+                    json.append(',');
+                }
+                json.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":").append(threadIds[i])
+                        .append(",\"args\":{\"name\":");
+                appendQuoted(json, threadNames[i]);
+                json.append("}}");
+                separator = true;
+            }
+
+            if (separator) {
+                json.append(',');
+            }
+            json.append("{\"name\":");
+            appendQuoted(json, names[i]);
+            json.append(",\"cat\":");
+            appendQuoted(json, categories[i]);
+            json.append(",\"ph\":\"").append(phases[i]).append('"');
+            json.append(",\"ts\":");
+            appendMicros(json, startNanos[i] - originNanos);
+            if (phases[i] == PHASE_COMPLETE) {
+                json.append(",\"dur\":");
+                appendMicros(json, durationNanos[i]);
+            } else {
+                json.append(",\"s\":\"t\"");
+            }
+            json.append(",\"pid\":1,\"tid\":").append(threadIds[i]);
+            if (details[i] != null) {
+                json.append(",\"args\":{\"detail\":");
+                appendQuoted(json, details[i]);
+                json.append('}');
+            }
+            json.append('}');
+            separator = true;
+        }
+
+        json.append("]}");
+        return json.toString();
+    }
+
+    // trace timestamps are in microseconds; keep sub-microsecond precision
+    private static void appendMicros(StringBuilder json, long nanos) {
+        json.append(nanos / 1000L).append('.');
+        long fraction = Math.abs(nanos % 1000L);
+        if (fraction < 100) {
+            json.append('0');
+        }
+        if (fraction < 10) {
+            json.append('0');
+        }
+        json.append(fraction);
+    }
+
+    private static void appendQuoted(StringBuilder json, String value) {
+        json.append('"');
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    json.append('\\').append(c);
+                } else if (c < 0x20) {
+                    json.append(String.format("\\u%04x", (int) c));
+                } else {
+                    json.append(c);
+                }
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,784 @@
+// UnityAdsPlugin.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Platform independent implementation of the UnityAds plugin.
+ * <p>
+ * Contains the Lua API, option parsing, event construction and the SDK callback handling.
+ * The host wraps it by providing a {@link LuaBridge} for every Lua call, an {@link AdsSdk},
+ * a {@link Platform} and, once the Corona runtime is loaded, an {@link EventDispatcher}.
+ */
+public class UnityAdsPlugin {
+    public static final String PLUGIN_NAME = "plugin.unityads";
+    public static final String PLUGIN_VERSION = "1.0.9";
+    public static final String PROVIDER_NAME = "unityads";
+
+    // event types
+    private static final String TYPE_UNITYAD = "unityAd";
+
+    // response keys
+    private static final String RESPONSE_SHOW_FAILED = "showFailed";
+
+    // event phases
+    private static final String PHASE_INIT = "init";
+    private static final String PHASE_DISPLAYED = "displayed";
+    private static final String PHASE_FAILED = "failed";
+    private static final String PHASE_SKIPPED = "skipped";
+    private static final String PHASE_COMPLETED = "completed";
+    private static final String PHASE_LOADED = "loaded";
+    private static final String PHASE_PLACEMENT_STATUS = "placementStatus";
+
+    // Lua argument and option names
+    private static final String ARG_LISTENER = "listener";
+    private static final String ARG_OPTIONS = "options";
+    private static final String ARG_PLACEMENT_ID = "placementId";
+    private static final String ARG_HAS_USER_CONSENT = "hasUserConsent";
+    private static final String ARG_ENABLED = "enabled";
+    private static final String ARG_FILENAME = "filename";
+    private static final String OPTION_GAME_ID = "gameId";
+    private static final String OPTION_TEST_MODE = "testMode";
+    private static final String OPTION_PLACEMENTS = "placements";
+    private static final String OPTION_MAX_PLACEMENTS = "maxPlacements";
+
+    // message constants
+    private static final String ERROR_MSG = "ERROR: ";
+    private static final String WARNING_MSG = "WARNING: ";
+
+    // activity tracing (see setTraceEnabled / exportTrace)
+    private static final int TRACE_BUFFER_SIZE = 4096;
+
+    // per-placement fill history, stored in the platform's files directory
+    private static final String HISTORY_FILE_NAME = "plugin.unityads.history";
+
+    // placements whose state is kept, the least recently used ones are evicted beyond that (see init)
+    private static final int DEFAULT_MAX_PLACEMENTS = 128;
+    private static final int MAX_MAX_PLACEMENTS = 10000;
+
+    private final AdsSdk sdk;
+    private final Platform platform;
+    private final TraceRecorder tracer = new TraceRecorder(TRACE_BUFFER_SIZE);
+    private final PlacementRegistry registry = new PlacementRegistry(DEFAULT_MAX_PLACEMENTS);
+    private final PlacementHistory history = new PlacementHistory(registry);
+    private final PreloadScheduler preloadScheduler;
+    private final ShowExecutor showExecutor = new ShowExecutor();
+
+    private volatile File historyFile = null;                                      // set by init()
+    private volatile boolean perPlacementLoad = false;                             // placements loaded on request
+
+    // written on the Lua thread and by the lifecycle callbacks, read from SDK callback threads
+    private volatile int coronaListener = LuaBridge.REFNIL;
+    private volatile EventDispatcher eventDispatcher = null;
+
+    private String functionSignature = "";                                         // used in error reporting functions
+
+    public UnityAdsPlugin(AdsSdk sdk, Platform platform) {
+        this.sdk = sdk;
+        this.platform = platform;
+        this.preloadScheduler = new PreloadScheduler(sdk, history, platform);
+    }
+
+    public TraceRecorder getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Returns the functions of the "plugin.unityads" Lua library.
+     */
+    public LuaFunction[] getLuaFunctions() {
+        return new LuaFunction[]{
+                new TracedFunction(new Init()),
+                new TracedFunction(new IsLoaded()),
+                new TracedFunction(new Show()),
+                new TracedFunction(new SetHasUserConsent()),
+                new SetTraceEnabled(),
+                new ExportTrace()
+        };
+    }
+
+    // -------------------------------------------------------------------
+    // Plugin lifecycle events
+    // -------------------------------------------------------------------
+
+    /**
+     * Called after the Corona runtime has been created.
+     *
+     * @param dispatcher Dispatcher delivering events to the new runtime. Ignored if one is already set.
+     */
+    public void onRuntimeLoaded(EventDispatcher dispatcher) {
+        if (eventDispatcher == null) {
+            eventDispatcher = dispatcher;
+        }
+    }
+
+    /**
+     * Called just after the Corona runtime has been suspended.
+     */
+    public void onRuntimeSuspended() {
+        // the app may not be resumed again
+        saveHistory();
+    }
+
+    /**
+     * Called just before the Corona runtime terminates.
+     */
+    public void onRuntimeExiting() {
+        // in this order, see dispatchLuaEvent()
+        eventDispatcher = null;
+        coronaListener = LuaBridge.REFNIL;
+
+        // remove listener
+        sdk.setListener(null);
+
+        // a soft boot may call init() without placements
+        preloadScheduler.stop();
+
+        saveHistory();
+    }
+
+    // -------------------------------------------------------------------
+    // helper functions
+    // -------------------------------------------------------------------
+
+    // log message to console
+    private void logMsg(String msgType, String errorMsg) {
+        String functionID = functionSignature;
+        if (!functionID.isEmpty()) {
+            functionID += ", ";
+        }
+
+        platform.log(msgType + functionID + errorMsg);
+    }
+
+    // return true if SDK is properly initialized
+    private boolean isSDKInitialized() {
+        if (coronaListener == LuaBridge.REFNIL) {
+            logMsg(ERROR_MSG, "unityads.init() must be called before calling other API functions");
+            return false;
+        }
+
+        return true;
+    }
+
+    private void saveHistory() {
+        File file = historyFile;
+        if (file != null) {
+            history.write(file);
+        }
+    }
+
+    // ends the load cycle of a placement that won't get ready, so deferred placements don't wait for it and the
+    // placement can be loaded again
+    private void onPlacementState(String placementId, PlacementState placementState) {
+        if (placementState == PlacementState.NO_FILL) {
+            if (history.onNoFill(placementId)) {
+                preloadScheduler.onUnfilled(placementId);
+            }
+        } else if (placementState == PlacementState.DISABLED || placementState == PlacementState.NOT_AVAILABLE) {
+            if (history.onLoadCancelled(placementId)) {
+                preloadScheduler.onUnfilled(placementId);
+            } else {
+                preloadScheduler.onSettled(placementId);
+            }
+        }
+    }
+
+    // dispatch a Lua event to our callback
+    private void dispatchLuaEvent(AdsEvent event) {
+        // read once, the runtime may be exiting on another thread. The listener is read first and cleared last,
+        // so a dispatcher that is still set never gets the cleared listener
+        int listener = coronaListener;
+        EventDispatcher dispatcher = eventDispatcher;
+        if (dispatcher != null && listener != LuaBridge.REFNIL) {
+            dispatcher.dispatch(listener, event);
+        }
+    }
+
+    // -------------------------------------------------------------------
+    // Plugin implementation
+    // -------------------------------------------------------------------
+
+    // [Lua] unityads.init(listener , options)
+    private class Init extends ValidatedFunction {
+        private final int gameIdSlot;
+        private final int testModeSlot;
+        private final int placementsSlot;
+        private final int maxPlacementsSlot;
+
+        Init() {
+            super(new LuaSchema("unityads.init(listener, options)")
+                    .listener(ARG_LISTENER, PROVIDER_NAME)
+                    .options(ARG_OPTIONS)
+                    .requiredOption(OPTION_GAME_ID, LuaSchema.Type.STRING)
+                    .option(OPTION_TEST_MODE, LuaSchema.Type.BOOLEAN)
+                    .option(OPTION_PLACEMENTS, LuaSchema.Type.STRING_ARRAY)
+                    .option(OPTION_MAX_PLACEMENTS, LuaSchema.Type.NUMBER), false);
+
+            gameIdSlot = args.slot(OPTION_GAME_ID);
+            testModeSlot = args.slot(OPTION_TEST_MODE);
+            placementsSlot = args.slot(OPTION_PLACEMENTS);
+            maxPlacementsSlot = args.slot(OPTION_MAX_PLACEMENTS);
+        }
+
+        @Override
+        public String getName() {
+            return "init";
+        }
+
+        @Override
+        int invokeValidated(LuaBridge L) {
+            // prevent init from being called twice
+            if (coronaListener != LuaBridge.REFNIL) {
+                logMsg(ERROR_MSG, "init() should only be called once");
+                return 0;
+            }
+
+            // checked before the conversion, which would turn out of range numbers into Integer.MAX_VALUE
+            double maxPlacements = args.getNumber(maxPlacementsSlot, DEFAULT_MAX_PLACEMENTS);
+            if (!(maxPlacements >= 1 && maxPlacements <= MAX_MAX_PLACEMENTS)) {
+                logMsg(ERROR_MSG, "options.maxPlacements must be between 1 and " + MAX_MAX_PLACEMENTS);
+                return 0;
+            }
+
+            coronaListener = L.newRef(1);
+
+            String gameId = args.getString(gameIdSlot);
+            boolean testMode = args.getBoolean(testModeSlot, false);
+            List<String> placements = args.getStringArray(placementsSlot);
+            if (placements != null) {
+                placements = new ArrayList<>(new LinkedHashSet<>(placements));
+            }
+
+            // log plugin version to the console
+            platform.log(PLUGIN_NAME + ": " + PLUGIN_VERSION + " (SDK: " + sdk.getVersion() + ")");
+
+            registry.setCapacity((int) maxPlacements);
+
+            // restore the fill history of previous sessions
+            File file = new File(platform.getFilesDirectory(), HISTORY_FILE_NAME);
+            history.read(file);
+            historyFile = file;
+
+            // declare final variables for inner loop
+            final String fGameId = gameId;
+            final boolean fTestMode = testMode;
+            final List<String> fPlacements = placements;
+            final long postedAt = tracer.begin();
+
+            platform.runOnUiThread(new Runnable() {
+                public void run() {
+                    tracer.end(TraceRecorder.CATEGORY_UI_THREAD, "runOnUiThread", postedAt, "init");
+                    long sdkStart = tracer.begin();
+
+                    // without a placement list, the SDK loads all placements by itself
+                    perPlacementLoad = fPlacements != null;
+                    history.onSessionStarted(System.nanoTime(), !perPlacementLoad);
+
+                    if (sdk.isInitialized()) {
+                        // will be called on app soft-boot
+                        sdk.setListener(new Delegate());
+                    } else {
+                        sdk.initialize(fGameId, fTestMode, perPlacementLoad, new Delegate());
+                    }
+
+                    tracer.end(TraceRecorder.CATEGORY_SDK, "UnityAds.initialize", sdkStart);
+
+                    // warm the placements most likely to be filled and shown first
+                    if (fPlacements != null) {
+                        preloadScheduler.start(fPlacements);
+                    }
+
+                    dispatchLuaEvent(new AdsEvent(PHASE_INIT));
+                }
+            });
+
+            return 0;
+        }
+    }
+
+    // [Lua] unityads.isLoaded(placementId)
+    private class IsLoaded extends ValidatedFunction {
+        private final int placementIdSlot;
+
+        IsLoaded() {
+            super(new LuaSchema("unityads.isLoaded(placementId)")
+                    .argument(ARG_PLACEMENT_ID, LuaSchema.Type.STRING), true);
+
+            placementIdSlot = args.slot(ARG_PLACEMENT_ID);
+        }
+
+        @Override
+        public String getName() {
+            return "isLoaded";
+        }
+
+        @Override
+        int invokeValidated(LuaBridge L) {
+            String placementId = args.getString(placementIdSlot);
+
+            // get placement status
+            long sdkStart = tracer.begin();
+            PlacementState placementState = sdk.getPlacementState(placementId);
+            tracer.end(TraceRecorder.CATEGORY_SDK, "UnityAds.getPlacementState", sdkStart, placementId);
+            String statusInfo = null;
+
+            if (placementState == PlacementState.READY) {
+                statusInfo = "Ready";
+            } else if (placementState == PlacementState.WAITING) {
+                statusInfo = "Loading";
+            } else if (placementState == PlacementState.DISABLED) {
+                statusInfo = "Disabled in dashboard";
+            } else if (placementState == PlacementState.NOT_AVAILABLE) {
+                statusInfo = "Configuration error";
+            } else if (placementState == PlacementState.NO_FILL) {
+                statusInfo = "No fill";
+            }
+
+            onPlacementState(placementId, placementState);
+
+            // create data
+            String data = new EventData()
+                    .put(EventData.PLACEMENT_ID_KEY, placementId)
+                    .put(EventData.STATUS_CODE_KEY, placementState)
+                    .put(EventData.STATUS_INFO_KEY, statusInfo)
+                    .toString();
+
+            // send Lua event
+            dispatchLuaEvent(new AdsEvent(PHASE_PLACEMENT_STATUS, TYPE_UNITYAD, data));
+
+            sdkStart = tracer.begin();
+            boolean isLoaded = sdk.isReady(placementId);
+            tracer.end(TraceRecorder.CATEGORY_SDK, "UnityAds.isReady", sdkStart, placementId);
+            L.pushBoolean(isLoaded);
+
+            // the app wants this placement, load it now if it was deferred or wasn't filled
+            if (!isLoaded) {
+                preloadScheduler.onRequested(placementId);
+            }
+
+            return 1;
+        }
+    }
+
+    // [Lua] unityads.show(placementId)
+    private class Show extends ValidatedFunction {
+        private final int placementIdSlot;
+
+        Show() {
+            super(new LuaSchema("unityads.show(placementId)")
+                    .argument(ARG_PLACEMENT_ID, LuaSchema.Type.STRING), true);
+
+            placementIdSlot = args.slot(ARG_PLACEMENT_ID);
+        }
+
+        @Override
+        public String getName() {
+            return "show";
+        }
+
+        @Override
+        int invokeValidated(LuaBridge L) {
+            long requestedAt = System.nanoTime();
+            String placementId = args.getString(placementIdSlot);
+
+            long sdkStart = tracer.begin();
+            boolean isLoaded = sdk.isReady(placementId);
+            tracer.end(TraceRecorder.CATEGORY_SDK, "UnityAds.isReady", sdkStart, placementId);
+
+            // can't show unless ad is loaded (checked again on the UI thread)
+            if (!isLoaded) {
+                logMsg(WARNING_MSG, "placementId '" + placementId + "' not loaded");
+                preloadScheduler.onRequested(placementId);
+                return 0;
+            }
+
+            showExecutor.submit(placementId, requestedAt);
+
+            return 0;
+        }
+    }
+
+    // a show() call waiting for the UI thread
+    private static final class ShowRequest {
+        final String placementId;
+        final long requestedAt;
+
+        ShowRequest(String placementId, long requestedAt) {
+            this.placementId = placementId;
+            this.requestedAt = requestedAt;
+        }
+    }
+
+    // shows ads on the UI thread, ahead of other pending UI work
+    private class ShowExecutor implements Runnable {
+        private final ArrayDeque<ShowRequest> requests = new ArrayDeque<>();
+        private final AtomicBoolean isPosted = new AtomicBoolean(false);
+
+        // called on the Lua thread
+        void submit(String placementId, long requestedAt) {
+            synchronized (this) {
+                requests.add(new ShowRequest(placementId, requestedAt));
+            }
+
+            // one post drains every pending request
+            if (isPosted.compareAndSet(false, true)) {
+                platform.runOnUiThreadAtFront(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            isPosted.set(false);
+
+            while (true) {
+                ShowRequest request;
+                synchronized (this) {
+                    request = requests.poll();
+                }
+                if (request == null) {
+                    return;
+                }
+
+                show(request.placementId, request.requestedAt);
+            }
+        }
+
+        private void show(String placementId, long requestedAt) {
+            tracer.end(TraceRecorder.CATEGORY_UI_THREAD, "showQueue", requestedAt, placementId);
+
+            // ------------------
+            // This is a "band-aid" fix to solve an edge case where the UnityAds SDK loses its listener.
+            // No direct evidence has been found as to why this happens, but it may be after an app has
+            // been inactive for an extended period of time. When this happens, create a new listener.
+            if (!sdk.hasListener()) {
+                platform.log("Unity Ads plugin: Preventive listener fix");
+                sdk.setListener(new Delegate());
+            }
+            // ------------------
+
+            // readiness may have changed since show() was called on the Lua thread
+            if (!sdk.isReady(placementId)) {
+                platform.log(WARNING_MSG + "unityads.show(placementId), placementId '" + placementId + "' no longer loaded");
+                dispatchLuaEvent(new AdsEvent(PHASE_FAILED, TYPE_UNITYAD, getJSONStringForPlacement(placementId), true, RESPONSE_SHOW_FAILED));
+                return;
+            }
+
+            long sdkStart = System.nanoTime();
+            boolean isShown = sdk.show(placementId);
+            tracer.end(TraceRecorder.CATEGORY_SDK, "UnityAds.show", sdkStart, placementId);
+
+            // no activity to show the ad in, the app is going away
+            if (!isShown) {
+                platform.log(WARNING_MSG + "unityads.show(placementId), placementId '" + placementId + "' could not be shown");
+                return;
+            }
+
+            // everything else happens after the ad has been requested. The SDK reports the outcome of a show
+            // asynchronously, so the displayed event still reaches Lua before the ad's finish event
+            history.onShow(placementId);
+
+            // use special event for onAdsStart (see delegate for more info)
+            String data = new EventData()
+                    .put(EventData.PLACEMENT_ID_KEY, placementId)
+                    .put(EventData.SHOW_LATENCY_KEY, (sdkStart - requestedAt) / 1e6)
+                    .toString();
+            dispatchLuaEvent(new AdsEvent(PHASE_DISPLAYED, TYPE_UNITYAD, data));
+        }
+    }
+
+    // [Lua] unityads.setHasUserConsent( bool )
+    private class SetHasUserConsent extends ValidatedFunction {
+        private final int hasUserConsentSlot;
+
+        SetHasUserConsent() {
+            super(new LuaSchema("unityads.setHasUserConsent( bool )")
+                    .argument(ARG_HAS_USER_CONSENT, LuaSchema.Type.BOOLEAN), true);
+
+            hasUserConsentSlot = args.slot(ARG_HAS_USER_CONSENT);
+        }
+
+        @Override
+        public String getName() {
+            return "setHasUserConsent";
+        }
+
+        @Override
+        int invokeValidated(LuaBridge L) {
+            boolean setHasUserConsent = args.getBoolean(hasUserConsentSlot, false);
+
+            sdk.setHasUserConsent(setHasUserConsent);
+
+            return 0;
+        }
+    }
+
+    // [Lua] unityads.setTraceEnabled( bool )
+    private class SetTraceEnabled extends ValidatedFunction {
+        private final int enabledSlot;
+
+        SetTraceEnabled() {
+            super(new LuaSchema("unityads.setTraceEnabled( bool )")
+                    .argument(ARG_ENABLED, LuaSchema.Type.BOOLEAN), false);
+
+            enabledSlot = args.slot(ARG_ENABLED);
+        }
+
+        @Override
+        public String getName() {
+            return "setTraceEnabled";
+        }
+
+        @Override
+        int invokeValidated(LuaBridge L) {
+            tracer.setEnabled(args.getBoolean(enabledSlot, false));
+
+            return 0;
+        }
+    }
+
+    // [Lua] unityads.exportTrace( [filename] )
+    private class ExportTrace extends ValidatedFunction {
+        private final int filenameSlot;
+
+        ExportTrace() {
+            super(new LuaSchema("unityads.exportTrace( [filename] )")
+                    .optionalArgument(ARG_FILENAME, LuaSchema.Type.STRING), false);
+
+            filenameSlot = args.slot(ARG_FILENAME);
+        }
+
+        @Override
+        public String getName() {
+            return "exportTrace";
+        }
+
+        @Override
+        int invokeValidated(LuaBridge L) {
+            String json = tracer.toJSON();
+
+            // no filename, return the trace as a string
+            if (!args.has(filenameSlot)) {
+                L.pushString(json);
+                return 1;
+            }
+
+            // keep the file in the documents directory
+            String filename = args.getString(filenameSlot);
+            if (filename.isEmpty() || filename.equals(".") || filename.equals("..")
+                    || filename.indexOf('/') >= 0 || filename.indexOf('\\') >= 0) {
+                logMsg(ERROR_MSG, "invalid filename '" + filename + "', expected a file name without directories");
+                return 0;
+            }
+
+            File traceFile = new File(platform.getDocumentsDirectory(), filename);
+
+            Writer writer = null;
+            try {
+                writer = new OutputStreamWriter(new FileOutputStream(traceFile), "UTF-8");
+                writer.write(json);
+            } catch (Exception ex) {
+                logMsg(ERROR_MSG, "could not write trace to '" + traceFile.getPath() + "': " + ex.getMessage());
+                return 0;
+            } finally {
+                if (writer != null) {
+                    try {
+                        writer.close();
+                    } catch (Exception ignored) {
+                    }
+                }
+            }
+
+            // return the full path of the written file
+            L.pushString(traceFile.getPath());
+            return 1;
+        }
+    }
+
+    // validates the arguments against the function's schema before calling it
+    private abstract class ValidatedFunction implements LuaFunction {
+        final LuaSchema args;
+        private final boolean requiresInit;
+
+        ValidatedFunction(LuaSchema args, boolean requiresInit) {
+            this.args = args;
+            this.requiresInit = requiresInit;
+        }
+
+        @Override
+        public int invoke(LuaBridge L) {
+            // set function signature for error / warning messages
+            functionSignature = args.getSignature();
+
+            if (requiresInit && !isSDKInitialized()) {
+                return 0;
+            }
+
+            String error = args.validate(L);
+            if (error != null) {
+                logMsg(ERROR_MSG, error);
+                return 0;
+            }
+
+            return invokeValidated(L);
+        }
+
+        /**
+         * Called with valid arguments, their values are read from the schema.
+         *
+         * @param L Bridge to the Lua state, to return values back to Lua.
+         * @return Returns the number of values to be returned by the Lua function.
+         */
+        abstract int invokeValidated(LuaBridge L);
+    }
+
+    // records the time spent in a Lua API call when tracing is enabled
+    private class TracedFunction implements LuaFunction {
+        private final LuaFunction function;
+        private final String traceName;
+
+        TracedFunction(LuaFunction function) {
+            this.function = function;
+            this.traceName = "unityads." + function.getName();
+        }
+
+        @Override
+        public String getName() {
+            return function.getName();
+        }
+
+        @Override
+        public int invoke(LuaBridge L) {
+            long traceStart = tracer.begin();
+            try {
+                return function.invoke(L);
+            } finally {
+                tracer.end(TraceRecorder.CATEGORY_LUA, traceName, traceStart);
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------
+    // Delegates
+    // -------------------------------------------------------------------
+
+    private static String getPlacementErrorInfo(String errorCode) {
+        String errorInfo;
+
+        switch (String.valueOf(errorCode)) {
+            case "NOT_INITIALIZED":
+                errorInfo = "UnityAds not initialized";
+                break;
+            case "INITIALIZE_FAILED":
+                errorInfo = "Initialization failed";
+                break;
+            case "INVALID_ARGUMENT":
+                errorInfo = "Invalid parameters during initialization";
+                break;
+            case "VIDEO_PLAYER_ERROR":
+                errorInfo = "Video Player failure";
+                break;
+            case "INIT_SANITY_CHECK_FAIL":
+                errorInfo = "UnityAds initialization sanity check error";
+                break;
+            case "AD_BLOCKER_DETECTED":
+                errorInfo = "Ad blocker detected";
+                break;
+            case "FILE_IO_ERROR":
+                errorInfo = "File I/O error";
+                break;
+            case "DEVICE_ID_ERROR":
+                errorInfo = "Bad device identifier";
+                break;
+            case "SHOW_ERROR":
+                errorInfo = "Failed to show ad";
+                break;
+            case "INTERNAL_ERROR":
+                errorInfo = "Internal error";
+                break;
+            default:
+                errorInfo = "Unknown error code (" + errorCode + ")";
+        }
+
+        return errorInfo;
+    }
+
+    private String getJSONStringForPlacement(String placementId) {
+        return registry.getPlacementJSON(placementId);
+    }
+
+    private class Delegate implements AdsSdkListener {
+        @Override
+        public void onReady(String placementId) {
+            tracer.mark(TraceRecorder.CATEGORY_SDK, "onUnityAdsReady", placementId);
+
+            history.onFill(placementId, System.nanoTime());
+            preloadScheduler.onSettled(placementId);
+
+            dispatchLuaEvent(new AdsEvent(PHASE_LOADED, TYPE_UNITYAD, getJSONStringForPlacement(placementId)));
+        }
+
+        @Override
+        public void onStart(String placementId) {
+            // NOP
+            // the displayed event is sent by show() since the ad activity takes control
+            // before Corona can handle this event
+        }
+
+        @Override
+        public void onFinish(String placementId, FinishState finishState) {
+            tracer.mark(TraceRecorder.CATEGORY_SDK, "onUnityAdsFinish", placementId);
+
+            // the placement is loaded again after a show
+            if (perPlacementLoad) {
+                preloadScheduler.onFinished(placementId);
+            } else {
+                history.onLoadStarted(placementId, System.nanoTime());
+            }
+
+            String data = getJSONStringForPlacement(placementId);
+            AdsEvent coronaEvent;
+
+            if (finishState == FinishState.ERROR) {
+                coronaEvent = new AdsEvent(PHASE_FAILED, TYPE_UNITYAD, data, true, RESPONSE_SHOW_FAILED);
+            } else if (finishState == FinishState.SKIPPED) {
+                coronaEvent = new AdsEvent(PHASE_SKIPPED, TYPE_UNITYAD, data);
+            } else if (finishState == FinishState.COMPLETED) {
+                coronaEvent = new AdsEvent(PHASE_COMPLETED, TYPE_UNITYAD, data);
+            } else {
+                coronaEvent = new AdsEvent(null, TYPE_UNITYAD, data);
+            }
+
+            // send Lua event
+            dispatchLuaEvent(coronaEvent);
+        }
+
+        @Override
+        public void onError(String errorCode, String message) {
+            tracer.mark(TraceRecorder.CATEGORY_SDK, "onUnityAdsError", message);
+
+            // errors don't name a placement, look for loading placements that won't get ready
+            for (String placementId : history.getLoadingPlacements()) {
+                onPlacementState(placementId, sdk.getPlacementState(placementId));
+            }
+
+            String data = new EventData()
+                    .put(EventData.ERROR_CODE_KEY, errorCode)
+                    .put(EventData.ERROR_MSG_KEY, getPlacementErrorInfo(errorCode))
+                    .toString();
+
+            dispatchLuaEvent(new AdsEvent(PHASE_FAILED, TYPE_UNITYAD, data, true, message));
+        }
+    }
+}
@@ -0,0 +1,527 @@
+// CallbackStormHarness.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Stress harness for the plugin's concurrency: SDK callbacks, Lua calls and runtime lifecycle events arriving
+ * from different threads.
+ * <p>
+ * Each round attaches a runtime, calls init() (in some rounds with fewer maxPlacements than the storm uses) and then
+ * runs a storm of actors, each on its own thread:
+ * <ul>
+ * <li>SDK actors calling the SDK listener (ready, start and finish callbacks), each owning a set of placements</li>
+ * <li>an SDK actor reporting errors</li>
+ * <li>a Lua actor calling isLoaded() and show()</li>
+ * <li>a lifecycle actor suspending the runtime, attaching it again and, every other round, exiting it</li>
+ * <li>the UI thread and the runtime's dispatcher</li>
+ * </ul>
+ * The rounds run in two modes, both with operations derived from the seed:
+ * <ul>
+ * <li>replay: a {@link TurnScheduler} runs one actor at a time and decides the interleaving, down to the plugin's
+ * calls into the SDK, the platform and the dispatcher. The schedule derives from the seed too, so a run is replayed
+ * exactly by passing the same seed; the harness prints a fingerprint of the schedules to compare runs.</li>
+ * <li>free: the actors run in parallel, so races between the plugin's calls into its seams can show up too. Runs
+ * can't be replayed and such races are rare, so look for them with many rounds ({@code -Pmode=free -Prounds=1000}).
+ * The throughput is measured in this mode.</li>
+ * </ul>
+ * <p>
+ * After each round, the delivered events are checked: every event goes to the round's listener, no event is
+ * duplicated and the events of a placement arrive in the order of its callbacks. When the runtime exits after the
+ * storm, no event may be lost, every ad shown is reported displayed and every show that found its ad gone is
+ * reported failed. When it exits during the storm, the events of a placement must be a prefix of its callbacks,
+ * since events are dropped once the runtime is gone.
+ * <p>
+ * Run with {@code ./gradlew :core:stressTest [-Pseed=N] [-Prounds=N] [-Pmode=replay|free|both]}, also run by
+ * {@code check}, in both modes. Exits with status 1 if a check fails.
+ */
+public final class CallbackStormHarness {
+    private static final int PLACEMENTS = 12;
+    private static final int SDK_ACTORS = 4;
+    private static final int CALLBACKS_PER_SDK_ACTOR = 3000;
+    private static final int ERRORS = 300;
+    private static final int LUA_CALLS = 3000;
+    private static final int LIFECYCLE_TURNS = 3000;
+    private static final int LIFECYCLE_EVENT_ODDS = 15;            // one lifecycle event every 15 turns, on average
+
+    private static final String ERROR_PREFIX = "storm error ";
+
+    private final long seed;
+    private final List<String> failures = new ArrayList<>();
+    private final TurnScheduler scheduler = new TurnScheduler(failures);
+    private final InMemoryAdsSdk sdk = new InMemoryAdsSdk(scheduler);
+    private final InMemoryPlatform platform;
+    private final UnityAdsPlugin plugin;
+    private final InMemoryLuaBridge luaBridge = new InMemoryLuaBridge();
+    private final Map<String, LuaFunction> luaFunctions = new HashMap<>();
+    private final String[] placementIds = new String[PLACEMENTS];
+
+    private CallbackStormHarness(long seed, File directory) {
+        this.seed = seed;
+        this.platform = new InMemoryPlatform(scheduler, directory);
+        this.plugin = new UnityAdsPlugin(sdk, platform);
+        sdk.setPlatform(platform);
+
+        for (LuaFunction function : plugin.getLuaFunctions()) {
+            luaFunctions.put(function.getName(), function);
+        }
+
+        for (int i = 0; i < PLACEMENTS; i++) {
+            placementIds[i] = "placement" + i;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        String mode = args.length > 2 ? args[2] : "both";
+        boolean replay = "replay".equals(mode) || "both".equals(mode);
+        boolean free = "free".equals(mode) || "both".equals(mode);
+        if (!replay && !free) {
+            System.out.println("unknown mode '" + mode + "', expected replay, free or both");
+            System.exit(2);
+        }
+
+        File directory = File.createTempFile("stress", "");
+        directory.delete();
+        directory.mkdirs();
+
+        System.out.println("callback storm: seed " + seed + ", " + rounds + " rounds, mode " + mode);
+
+        CallbackStormHarness harness = new CallbackStormHarness(seed, directory);
+        try {
+            for (int round = 0; replay && round < rounds; round++) {
+                harness.runRound(round, false);
+            }
+            for (int round = 0; free && round < rounds; round++) {
+                harness.runRound(round, true);
+            }
+        } catch (IllegalStateException ex) {
+            harness.failures.add(ex.getMessage());
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+
+        if (!harness.failures.isEmpty()) {
+            for (String failure : harness.failures) {
+                System.out.println("FAILED: " + failure);
+            }
+            if (replay) {
+                System.out.println("replay with: ./gradlew :core:stressTest -Pseed=" + seed + " -Prounds=" + rounds
+                        + " -Pmode=replay (failures of free rounds may not show up again)");
+            }
+            System.exit(1);
+        }
+
+        System.out.println("callback storm: passed"
+                + (replay ? ", replay schedule " + Long.toHexString(harness.scheduler.getFingerprint()) : ""));
+    }
+
+    // -------------------------------------------------------------------
+    // rounds
+    // -------------------------------------------------------------------
+
+    // what the actors did during a round
+    private static final class Round {
+        final int index;
+        final String name;
+        final boolean free;
+        final boolean exitDuringStorm;
+        final boolean perPlacementLoad;
+
+        final Map<String, List<String>> expectedPhases = new HashMap<>();     // per placement, from its SDK actor
+        final Set<String> errorMessages = new HashSet<>();
+        int isLoadedCalls = 0;
+        int showCalls = 0;
+        int submittedShows = 0;                                             // show() calls that found the ad ready
+
+        Round(int index, boolean free) {
+            this.index = index;
+            this.name = (free ? "free round " : "replay round ") + index;
+            this.free = free;
+            this.exitDuringStorm = index % 2 == 1;
+            this.perPlacementLoad = index % 3 != 2;
+        }
+    }
+
+    private void runRound(int index, boolean free) throws Exception {
+        final Round round = new Round(index, free);
+        final InMemoryDispatcher dispatcher = new InMemoryDispatcher(scheduler);
+        long roundSeed = seed * 1000003L + index;
+
+        // attach the runtime and initialize, in most rounds with a placement list
+        plugin.onRuntimeLoaded(dispatcher);
+
+        Map<Object, Object> options = new LinkedHashMap<>();
+        options.put("gameId", "stress");
+        options.put("testMode", true);
+        if (round.perPlacementLoad) {
+            Map<Object, Object> placements = new LinkedHashMap<>();
+            for (int i = 0; i < PLACEMENTS; i++) {
+                placements.put(i + 1.0, placementIds[i]);
+            }
+            options.put("placements", placements);
+        }
+
+        // fewer placements than the storm uses, so they are evicted while it runs
+        if (index % 4 == 3) {
+            options.put("maxPlacements", PLACEMENTS * 2 / 3.0);
+        }
+
+        sdk.resetCounters();
+        luaFunctions.get("init").invoke(luaBridge.call(InMemoryLuaBridge.FUNCTION, options));
+        scheduler.add("ui", platform);
+        scheduler.add("runtime", dispatcher);
+        run(round, roundSeed);
+
+        if (sdk.getListener() == null) {
+            failures.add(round.name + ": init() did not set the SDK listener");
+            return;
+        }
+
+        // storm
+        for (int i = 0; i < SDK_ACTORS; i++) {
+            scheduler.add("sdk" + i, sdkActor(round, i, new Random(roundSeed + i + 1)));
+        }
+        scheduler.add("sdk-errors", errorActor(round));
+        scheduler.add("lua", luaActor(round, new Random(roundSeed + SDK_ACTORS + 1)));
+        scheduler.add("lifecycle", lifecycleActor(round, dispatcher, new Random(roundSeed + SDK_ACTORS + 2)));
+        scheduler.add("ui", platform);
+        scheduler.add("runtime", dispatcher);
+
+        long stepsBefore = scheduler.getSteps();
+        long startedAt = System.nanoTime();
+        run(round, roundSeed);
+        long elapsedNanos = System.nanoTime() - startedAt;
+        long steps = scheduler.getSteps() - stepsBefore;
+
+        // detach the runtime if the storm didn't, pending warm-up timeouts belong to this runtime
+        if (!round.exitDuringStorm) {
+            plugin.onRuntimeExiting();
+        }
+        platform.clearDelayedTasks();
+
+        List<InMemoryDispatcher.Delivery> deliveries = dispatcher.getDelivered();
+        check(round, deliveries);
+
+        // the time of a replay round is mostly spent handing turns over, so only free rounds measure throughput
+        int operations = SDK_ACTORS * CALLBACKS_PER_SDK_ACTOR + ERRORS + LUA_CALLS + LIFECYCLE_TURNS;
+        String storm = round.exitDuringStorm ? " (exit during storm)" : "";
+        if (free) {
+            double seconds = elapsedNanos / 1e9;
+            System.out.println(String.format(
+                    "%s%s: %d operations in %d steps, %.0f ms (%.0f ops/s), %d events delivered (%.0f events/s)",
+                    round.name, storm, operations, steps, seconds * 1000, operations / seconds, deliveries.size(),
+                    deliveries.size() / seconds));
+        } else {
+            System.out.println(String.format("%s%s: %d operations in %d steps, %d events delivered",
+                    round.name, storm, operations, steps, deliveries.size()));
+        }
+    }
+
+    private void run(Round round, long roundSeed) throws InterruptedException {
+        if (round.free) {
+            scheduler.runFree();
+        } else {
+            scheduler.run(roundSeed);
+        }
+    }
+
+    // runs a fixed number of operations, one per step
+    private abstract static class OperationActor implements TurnScheduler.Actor {
+        private int remaining;
+
+        OperationActor(int operations) {
+            this.remaining = operations;
+        }
+
+        @Override
+        public boolean hasWork() {
+            return remaining > 0;
+        }
+
+        @Override
+        public void step() {
+            remaining--;
+            operate();
+        }
+
+        void finish() {
+            remaining = 0;
+        }
+
+        abstract void operate();
+    }
+
+    // calls the SDK listener for the placements it owns, recording the expected event phases
+    private TurnScheduler.Actor sdkActor(final Round round, int actor, final Random random) {
+        final List<String> owned = new ArrayList<>();
+        for (int i = actor; i < PLACEMENTS; i += SDK_ACTORS) {
+            owned.add(placementIds[i]);
+            round.expectedPhases.put(placementIds[i], new ArrayList<String>());
+        }
+
+        return new OperationActor(CALLBACKS_PER_SDK_ACTOR) {
+            @Override
+            void operate() {
+                String placementId = owned.get(random.nextInt(owned.size()));
+                int callback = random.nextInt(10);
+
+                // the SDK only calls a listener it has
+                AdsSdkListener listener = sdk.getListener();
+                if (listener == null) {
+                    return;
+                }
+
+                List<String> expected = round.expectedPhases.get(placementId);
+                if (callback < 4) {
+                    expected.add("loaded");
+                    sdk.setReady(placementId);
+                    listener.onReady(placementId);
+                } else if (callback == 4) {
+                    listener.onStart(placementId);
+                } else if (callback < 8) {
+                    expected.add("completed");
+                    listener.onFinish(placementId, FinishState.COMPLETED);
+                } else if (callback == 8) {
+                    expected.add("skipped");
+                    listener.onFinish(placementId, FinishState.SKIPPED);
+                } else {
+                    expected.add("failed");
+                    listener.onFinish(placementId, FinishState.ERROR);
+                }
+            }
+        };
+    }
+
+    private TurnScheduler.Actor errorActor(final Round round) {
+        return new OperationActor(ERRORS) {
+            private int errors = 0;
+
+            @Override
+            void operate() {
+                AdsSdkListener listener = sdk.getListener();
+                if (listener == null) {
+                    return;
+                }
+
+                String message = ERROR_PREFIX + errors++;
+                round.errorMessages.add(message);
+                listener.onError("INTERNAL_ERROR", message);
+            }
+        };
+    }
+
+    private TurnScheduler.Actor luaActor(final Round round, final Random random) {
+        final LuaFunction isLoaded = luaFunctions.get("isLoaded");
+        final LuaFunction show = luaFunctions.get("show");
+
+        return new OperationActor(LUA_CALLS) {
+            @Override
+            void operate() {
+                String placementId = placementIds[random.nextInt(PLACEMENTS)];
+
+                if (random.nextBoolean()) {
+                    // the ad is only shown if it was ready when show() checked
+                    int readyAnswers = sdk.readyAnswers;
+                    show.invoke(luaBridge.call(placementId));
+                    round.submittedShows += sdk.readyAnswers - readyAnswers;
+                    round.showCalls++;
+                } else {
+                    isLoaded.invoke(luaBridge.call(placementId));
+                    round.isLoadedCalls++;
+                }
+            }
+        };
+    }
+
+    // suspends and attaches the runtime during the storm and, every other round, exits it at a seeded point.
+    // Takes as many turns as the other actors, idling in most of them, so its events spread over the storm
+    private TurnScheduler.Actor lifecycleActor(final Round round, final EventDispatcher dispatcher, final Random random) {
+        final int exitAt = round.exitDuringStorm ? LIFECYCLE_TURNS / 4 + random.nextInt(LIFECYCLE_TURNS / 2) : -1;
+
+        return new OperationActor(LIFECYCLE_TURNS) {
+            private int turns = 0;
+
+            @Override
+            void operate() {
+                if (turns++ == exitAt) {
+                    plugin.onRuntimeExiting();
+                    finish();
+                } else if (random.nextInt(LIFECYCLE_EVENT_ODDS) != 0) {
+                    return;
+                } else if (random.nextInt(8) == 0) {
+                    plugin.onRuntimeSuspended();
+                } else {
+                    // already attached, must be ignored
+                    plugin.onRuntimeLoaded(dispatcher);
+                }
+            }
+        };
+    }
+
+    // -------------------------------------------------------------------
+    // checks
+    // -------------------------------------------------------------------
+
+    private void check(Round round, List<InMemoryDispatcher.Delivery> deliveries) {
+        String prefix = round.name + ": ";
+        boolean strict = !round.exitDuringStorm;
+
+        if (deliveries.isEmpty() || !"init".equals(deliveries.get(0).event.phase)) {
+            failures.add(prefix + "the init event wasn't delivered first");
+            return;
+        }
+
+        int listenerRef = deliveries.get(0).listenerRef;
+        Map<String, List<String>> actualPhases = new HashMap<>();
+        Map<String, Integer> displayed = new HashMap<>();
+        Set<String> errorMessages = new HashSet<>();
+        int placementStatusEvents = 0;
+        int displayedEvents = 0;
+
+        for (int i = 1; i < deliveries.size(); i++) {
+            InMemoryDispatcher.Delivery delivery = deliveries.get(i);
+            AdsEvent event = delivery.event;
+            String placementId = getPlacementId(event.data);
+
+            if (delivery.listenerRef != listenerRef) {
+                failures.add(prefix + "event '" + event.phase + "' sent to listener " + delivery.listenerRef
+                        + " instead of " + listenerRef);
+            }
+
+            if ("placementStatus".equals(event.phase)) {
+                placementStatusEvents++;
+            } else if ("displayed".equals(event.phase)) {
+                displayedEvents++;
+                displayed.put(placementId, count(displayed, placementId) + 1);
+            } else if ("failed".equals(event.phase) && placementId == null) {
+                if (!round.errorMessages.contains(event.response)) {
+                    failures.add(prefix + "unexpected error event '" + event.response + "'");
+                } else if (!errorMessages.add(event.response)) {
+                    failures.add(prefix + "error event '" + event.response + "' delivered twice");
+                }
+            } else if (placementId != null && round.expectedPhases.containsKey(placementId)) {
+                List<String> phases = actualPhases.get(placementId);
+                if (phases == null) {
+                    phases = new ArrayList<>();
+                    actualPhases.put(placementId, phases);
+                }
+                phases.add(event.phase);
+            } else {
+                failures.add(prefix + "unexpected event '" + event.phase + "' " + event.data);
+            }
+        }
+
+        // per placement order, no loss or duplication. The placement's events are its callbacks plus a failed
+        // event for every show that found the ad gone on the UI thread
+        int dropped = 0;
+        int showsFailed = 0;
+        for (Map.Entry<String, List<String>> entry : round.expectedPhases.entrySet()) {
+            String placementId = entry.getKey();
+            List<String> expected = entry.getValue();
+            List<String> actual = actualPhases.containsKey(placementId) ? actualPhases.get(placementId) : new ArrayList<String>();
+            int showChecksFailed = count(sdk.showChecksFailed, placementId);
+
+            int matched = 0;
+            int extraFailures = 0;
+            for (String phase : actual) {
+                if (matched < expected.size() && expected.get(matched).equals(phase)) {
+                    matched++;
+                } else if ("failed".equals(phase)) {
+                    extraFailures++;
+                } else {
+                    failures.add(prefix + placementId + " event " + (matched + extraFailures) + " is '" + phase
+                            + "', expected '" + (matched < expected.size() ? expected.get(matched) : "(none)") + "'");
+                    break;
+                }
+            }
+
+            if (extraFailures > showChecksFailed) {
+                failures.add(prefix + placementId + " got " + extraFailures + " unexpected failed events");
+            } else if (strict && matched != expected.size()) {
+                failures.add(prefix + placementId + " lost " + (expected.size() - matched) + " events");
+            } else if (strict && extraFailures != showChecksFailed) {
+                failures.add(prefix + placementId + " got " + extraFailures + " failed events for " + showChecksFailed
+                        + " shows of an ad that was gone");
+            }
+
+            if (strict && count(displayed, placementId) != count(sdk.placementShows, placementId)) {
+                failures.add(prefix + placementId + " got " + count(displayed, placementId) + " displayed events for "
+                        + count(sdk.placementShows, placementId) + " ads shown");
+            }
+
+            dropped += expected.size() - matched;
+            showsFailed += showChecksFailed;
+        }
+
+        dropped += round.errorMessages.size() - errorMessages.size();
+        dropped += round.isLoadedCalls - placementStatusEvents;
+        dropped += sdk.shows - displayedEvents;
+
+        // every show() that found the ad ready reached the UI thread, where it was either shown or found gone
+        if (sdk.shows + showsFailed != round.submittedShows) {
+            failures.add(prefix + round.submittedShows + " shows submitted, " + sdk.shows + " shown and "
+                    + showsFailed + " found gone");
+        }
+
+        // without a placement list, the SDK loads the placements by itself
+        if (round.perPlacementLoad ? sdk.loads == 0 : sdk.loads != 0) {
+            failures.add(prefix + sdk.loads + " placements loaded by the plugin");
+        }
+
+        if (strict) {
+            if (errorMessages.size() != round.errorMessages.size()) {
+                failures.add(prefix + "lost " + (round.errorMessages.size() - errorMessages.size()) + " error events");
+            }
+            if (placementStatusEvents != round.isLoadedCalls) {
+                failures.add(prefix + placementStatusEvents + " placementStatus events for " + round.isLoadedCalls + " isLoaded() calls");
+            }
+        } else {
+            if (placementStatusEvents > round.isLoadedCalls) {
+                failures.add(prefix + placementStatusEvents + " placementStatus events for " + round.isLoadedCalls + " isLoaded() calls");
+            }
+            if (displayedEvents > sdk.shows) {
+                failures.add(prefix + displayedEvents + " displayed events for " + sdk.shows + " ads shown");
+            }
+            System.out.println(prefix + dropped + " events dropped after exit");
+        }
+
+        System.out.println(prefix + round.showCalls + " show() calls, " + sdk.shows + " shown, "
+                + showsFailed + " found gone on the UI thread");
+    }
+
+    private static int count(Map<String, Integer> counts, String key) {
+        Integer count = counts.get(key);
+        return count != null ? count : 0;
+    }
+
+    private static String getPlacementId(String data) {
+        if (data == null) {
+            return null;
+        }
+
+        String key = "\"" + EventData.PLACEMENT_ID_KEY + "\":\"";
+        int start = data.indexOf(key);
+        if (start < 0) {
+            return null;
+        }
+
+        start += key.length();
+        return data.substring(start, data.indexOf('"', start));
+    }
+}
@@ -0,0 +1,156 @@
+// InMemoryAdsSdk.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ads SDK stand-in for the stress harness.
+ * <p>
+ * A placement is ready once the harness reports it filled, until its ad is shown. Placements that aren't ready
+ * report NO_FILL if their name ends with 0, 3, 6 or 9, DISABLED if it ends with 5 and WAITING otherwise, so the
+ * plugin's no fill and unavailable placement handling runs too. Callbacks are not generated here, the harness
+ * drives the listener directly, the way the SDK calls it from its own threads.
+ * <p>
+ * The calls the plugin makes where another thread could get in between are yield points of the
+ * {@link TurnScheduler}. Calls whose number depends on wall clock time (load(), getPlacementState()) are not,
+ * so they don't change the schedule. The SDK may be called from any thread, the counters are only read by the
+ * thread that changes them or once the scheduler's run is over.
+ */
+final class InMemoryAdsSdk implements AdsSdk {
+    private final TurnScheduler scheduler;
+    private InMemoryPlatform platform = null;
+
+    private volatile boolean initialized = false;
+    private volatile AdsSdkListener listener = null;
+    private final Set<String> readyPlacements = new HashSet<>();
+
+    // counters, reset by the harness
+    int loads = 0;
+    int shows = 0;
+    int readyAnswers = 0;                                       // isReady() true, outside of the UI thread
+    final Map<String, Integer> showChecksFailed = new HashMap<>();  // isReady() false on the UI thread
+    final Map<String, Integer> placementShows = new HashMap<>();
+
+    InMemoryAdsSdk(TurnScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    void setPlatform(InMemoryPlatform platform) {
+        this.platform = platform;
+    }
+
+    synchronized void resetCounters() {
+        loads = 0;
+        shows = 0;
+        readyAnswers = 0;
+        showChecksFailed.clear();
+        placementShows.clear();
+    }
+
+    /**
+     * Returns the listener the SDK would call right now, or null if there is none.
+     */
+    AdsSdkListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Called by the harness before it reports the placement ready.
+     */
+    synchronized void setReady(String placementId) {
+        readyPlacements.add(placementId);
+    }
+
+    private static void increment(Map<String, Integer> counts, String placementId) {
+        Integer count = counts.get(placementId);
+        counts.put(placementId, count == null ? 1 : count + 1);
+    }
+
+    @Override
+    public String getVersion() {
+        return "in-memory";
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    @Override
+    public void initialize(String gameId, boolean testMode, boolean perPlacementLoad, AdsSdkListener listener) {
+        scheduler.yieldPoint();
+        this.listener = listener;
+        initialized = true;
+    }
+
+    @Override
+    public void setListener(AdsSdkListener listener) {
+        scheduler.yieldPoint();
+        this.listener = listener;
+    }
+
+    @Override
+    public boolean hasListener() {
+        scheduler.yieldPoint();
+        return listener != null;
+    }
+
+    @Override
+    public boolean isReady(String placementId) {
+        scheduler.yieldPoint();
+
+        synchronized (this) {
+            boolean isReady = readyPlacements.contains(placementId);
+            if (platform.isUiThread()) {
+                if (!isReady) {
+                    increment(showChecksFailed, placementId);
+                }
+            } else if (isReady) {
+                readyAnswers++;
+            }
+
+            return isReady;
+        }
+    }
+
+    @Override
+    public synchronized PlacementState getPlacementState(String placementId) {
+        if (readyPlacements.contains(placementId)) {
+            return PlacementState.READY;
+        }
+
+        int last = placementId.charAt(placementId.length() - 1) - '0';
+        if (last == 5) {
+            return PlacementState.DISABLED;
+        }
+        return last % 3 == 0 ? PlacementState.NO_FILL : PlacementState.WAITING;
+    }
+
+    @Override
+    public synchronized void load(String placementId) {
+        loads++;
+    }
+
+    @Override
+    public boolean show(String placementId) {
+        scheduler.yieldPoint();
+
+        // the ad is used up
+        synchronized (this) {
+            readyPlacements.remove(placementId);
+            shows++;
+            increment(placementShows, placementId);
+        }
+        return true;
+    }
+
+    @Override
+    public void setHasUserConsent(boolean hasUserConsent) {
+    }
+}
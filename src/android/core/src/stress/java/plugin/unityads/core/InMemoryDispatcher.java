@@ -0,0 +1,65 @@
+// InMemoryDispatcher.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Runtime dispatcher stand-in for the stress harness.
+ * <p>
+ * Like the Corona runtime's task dispatcher, events are queued from any thread and delivered in order on the
+ * runtime's own thread, here an actor of the {@link TurnScheduler} delivering one event per step.
+ */
+final class InMemoryDispatcher implements EventDispatcher, TurnScheduler.Actor {
+    static final class Delivery {
+        final int listenerRef;
+        final AdsEvent event;
+
+        Delivery(int listenerRef, AdsEvent event) {
+            this.listenerRef = listenerRef;
+            this.event = event;
+        }
+    }
+
+    private final TurnScheduler scheduler;
+    private final Deque<Delivery> queue = new ArrayDeque<>();
+    private final List<Delivery> delivered = new ArrayList<>();
+
+    InMemoryDispatcher(TurnScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void dispatch(int listenerRef, AdsEvent event) {
+        scheduler.yieldPoint();
+        synchronized (this) {
+            queue.addLast(new Delivery(listenerRef, event));
+        }
+    }
+
+    @Override
+    public synchronized boolean hasWork() {
+        return !queue.isEmpty();
+    }
+
+    @Override
+    public void step() {
+        Delivery delivery;
+        synchronized (this) {
+            delivery = queue.pollFirst();
+        }
+        delivered.add(delivery);
+    }
+
+    /**
+     * Returns the delivered events, in delivery order. Only read once the scheduler's run is over.
+     */
+    List<Delivery> getDelivered() {
+        return delivered;
+    }
+}
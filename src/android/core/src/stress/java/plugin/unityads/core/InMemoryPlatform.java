@@ -0,0 +1,122 @@
+// InMemoryPlatform.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Platform stand-in for the stress harness.
+ * <p>
+ * The UI thread is an actor of the {@link TurnScheduler}, running one posted task per step. Delays are measured
+ * on the scheduler's clock, one millisecond per step. Tasks may be posted from any thread.
+ */
+final class InMemoryPlatform implements Platform, TurnScheduler.Actor {
+    private static final class DelayedTask {
+        final Runnable task;
+        final long dueStep;
+
+        DelayedTask(Runnable task, long dueStep) {
+            this.task = task;
+            this.dueStep = dueStep;
+        }
+    }
+
+    private final TurnScheduler scheduler;
+    private final File directory;
+
+    private final Deque<Runnable> uiQueue = new ArrayDeque<>();
+    private final List<DelayedTask> delayedTasks = new ArrayList<>();      // by due step
+    private volatile Thread uiThread = null;                                // while running a task
+
+    InMemoryPlatform(TurnScheduler scheduler, File directory) {
+        this.scheduler = scheduler;
+        this.directory = directory;
+    }
+
+    /**
+     * Returns true if called from a task running on the UI thread.
+     */
+    boolean isUiThread() {
+        return Thread.currentThread() == uiThread;
+    }
+
+    /**
+     * Drops the delayed tasks that haven't run yet.
+     */
+    synchronized void clearDelayedTasks() {
+        delayedTasks.clear();
+    }
+
+    @Override
+    public synchronized boolean hasWork() {
+        return !uiQueue.isEmpty() || (!delayedTasks.isEmpty() && delayedTasks.get(0).dueStep <= scheduler.getSteps());
+    }
+
+    @Override
+    public void step() {
+        Runnable task;
+        synchronized (this) {
+            task = uiQueue.pollFirst();
+            if (task == null) {
+                task = delayedTasks.remove(0).task;
+            }
+        }
+
+        uiThread = Thread.currentThread();
+        try {
+            task.run();
+        } finally {
+            uiThread = null;
+        }
+    }
+
+    @Override
+    public void runOnUiThread(Runnable task) {
+        scheduler.yieldPoint();
+        synchronized (this) {
+            uiQueue.addLast(task);
+        }
+    }
+
+    @Override
+    public void runOnUiThreadAtFront(Runnable task) {
+        scheduler.yieldPoint();
+        synchronized (this) {
+            uiQueue.addFirst(task);
+        }
+    }
+
+    @Override
+    public void runOnUiThreadDelayed(Runnable task, long delayMillis) {
+        scheduler.yieldPoint();
+
+        long dueStep = scheduler.getSteps() + delayMillis;
+        synchronized (this) {
+            int index = 0;
+            while (index < delayedTasks.size() && delayedTasks.get(index).dueStep <= dueStep) {
+                index++;
+            }
+            delayedTasks.add(index, new DelayedTask(task, dueStep));
+        }
+    }
+
+    @Override
+    public File getDocumentsDirectory() {
+        return directory;
+    }
+
+    @Override
+    public File getFilesDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void log(String message) {
+    }
+}
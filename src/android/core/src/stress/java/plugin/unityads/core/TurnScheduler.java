@@ -0,0 +1,278 @@
+// TurnScheduler.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs actors on their own threads, either one at a time in a replayable order ({@link #run}) or all at once
+ * ({@link #runFree}).
+ * <p>
+ * In the replay mode, the order is decided by a seeded random generator. An actor holding the turn runs one step and then hands the turn to an actor picked at random among those that
+ * have work. Steps can also hand the turn over in the middle, at {@link #yieldPoint()}s, which the in-memory
+ * stand-ins call whenever the plugin calls them. Given the same seed and the same actors, the interleaving is the
+ * same on every run, so a failing schedule can be replayed.
+ * <p>
+ * Every turn handed out advances the virtual clock ({@link #getSteps()}) by one.
+ * Yield points must not be reached while holding a lock another actor may wait for.
+ * <p>
+ * In the free-running mode, the actors run their steps in parallel and yield points do nothing. The interleaving is
+ * left to the JVM and the OS, so a run can't be replayed, but races between yield points can show up. Every step
+ * advances the clock by one.
+ */
+final class TurnScheduler {
+    interface Actor {
+        /**
+         * Returns true if the actor has a step to run. In the replay mode, only called by the thread holding the
+         * turn. In the free-running mode, called from any thread.
+         */
+        boolean hasWork();
+
+        void step();
+    }
+
+    // a run that doesn't finish in this time is considered deadlocked
+    private static final long STALL_SECONDS = 60;
+
+    private static final class Slot {
+        final String name;
+        final Actor actor;
+        final Semaphore turn = new Semaphore(0);
+        volatile boolean busy = false;                  // in the middle of a step
+
+        Slot(String name, Actor actor) {
+            this.name = name;
+            this.actor = actor;
+        }
+    }
+
+    private final List<String> failures;
+    private final ThreadLocal<Slot> currentSlot = new ThreadLocal<>();
+    private final List<Slot> slots = new ArrayList<>();
+    private final Semaphore done = new Semaphore(0);
+
+    private Random random = null;                       // set while running
+    private volatile boolean stopping = false;
+    private final AtomicLong steps = new AtomicLong();              // started
+    private final AtomicLong finishedSteps = new AtomicLong();      // by runFree() only, counted from steps
+    private long fingerprint = 0;
+    private String lastTurn = null;
+
+    TurnScheduler(List<String> failures) {
+        this.failures = failures;
+    }
+
+    void add(String name, Actor actor) {
+        slots.add(new Slot(name, actor));
+    }
+
+    /**
+     * Returns the number of turns handed out so far, used as a clock.
+     */
+    long getSteps() {
+        return steps.get();
+    }
+
+    /**
+     * Returns a hash of the order in which turns were handed out by {@link #run} since the scheduler was created.
+     */
+    long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Runs the added actors one at a time, in the order derived from the seed, until none of them has work left,
+     * then removes them.
+     */
+    void run(long seed) throws InterruptedException {
+        random = new Random(seed);
+        stopping = false;
+
+        List<Thread> threads = new ArrayList<>();
+        for (final Slot slot : slots) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runActor(slot);
+                }
+            }, slot.name);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+        passTurn();
+        boolean finished = done.tryAcquire(STALL_SECONDS, TimeUnit.SECONDS);
+
+        stopping = true;
+        for (Slot slot : slots) {
+            slot.turn.release();
+        }
+        if (finished) {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+
+        slots.clear();
+        random = null;
+
+        if (!finished) {
+            throw new IllegalStateException("schedule stalled after " + steps + " steps, last turn: " + lastTurn);
+        }
+    }
+
+    /**
+     * Runs the added actors at the same time, each running steps while it has work, until none of them has work
+     * left, then removes them.
+     */
+    void runFree() throws InterruptedException {
+        stopping = false;
+        finishedSteps.set(steps.get());
+
+        List<Thread> threads = new ArrayList<>();
+        for (final Slot slot : slots) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runFreeActor(slot);
+                }
+            }, slot.name);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(STALL_SECONDS);
+        boolean finished;
+        while (!(finished = isIdle()) && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+
+        stopping = true;
+        if (finished) {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+
+        slots.clear();
+
+        if (!finished) {
+            throw new IllegalStateException("free run stalled after " + steps + " steps");
+        }
+    }
+
+    private void runFreeActor(Slot slot) {
+        while (!stopping) {
+            if (!slot.actor.hasWork()) {
+                Thread.yield();
+                continue;
+            }
+
+            steps.incrementAndGet();
+            try {
+                slot.actor.step();
+            } catch (Throwable ex) {
+                synchronized (failures) {
+                    failures.add(slot.name + " threw " + ex);
+                }
+                ex.printStackTrace();
+            }
+            finishedSteps.incrementAndGet();
+        }
+    }
+
+    // true if no actor runs a step or has one to run. A step may give another actor work, so the step counts must
+    // be the same before and after looking at the actors, with every started step finished
+    private boolean isIdle() {
+        long started = steps.get();
+        if (finishedSteps.get() != started) {
+            return false;
+        }
+
+        for (Slot slot : slots) {
+            if (slot.actor.hasWork()) {
+                return false;
+            }
+        }
+
+        return steps.get() == started;
+    }
+
+    private void runActor(Slot slot) {
+        currentSlot.set(slot);
+
+        while (true) {
+            slot.turn.acquireUninterruptibly();
+            if (stopping) {
+                return;
+            }
+
+            slot.busy = true;
+            try {
+                slot.actor.step();
+            } catch (Throwable ex) {
+                synchronized (failures) {
+                    failures.add(slot.name + " threw " + ex);
+                }
+                ex.printStackTrace();
+            }
+            slot.busy = false;
+
+            passTurn();
+        }
+    }
+
+    /**
+     * Lets the scheduler hand the turn to another actor before continuing. No-op outside of actors.
+     */
+    void yieldPoint() {
+        Slot slot = currentSlot.get();
+        if (slot == null || random == null) {
+            return;
+        }
+
+        // the current actor is busy, so there is always an actor to pick
+        Slot next = pick();
+        if (next != slot) {
+            next.turn.release();
+            slot.turn.acquireUninterruptibly();
+        }
+    }
+
+    private void passTurn() {
+        Slot next = pick();
+        if (next == null) {
+            done.release();
+        } else {
+            next.turn.release();
+        }
+    }
+
+    private Slot pick() {
+        List<Slot> ready = new ArrayList<>(slots.size());
+        for (Slot slot : slots) {
+            if (slot.busy || slot.actor.hasWork()) {
+                ready.add(slot);
+            }
+        }
+
+        if (ready.isEmpty()) {
+            return null;
+        }
+
+        Slot next = ready.get(random.nextInt(ready.size()));
+        steps.incrementAndGet();
+        fingerprint = fingerprint * 31 + slots.indexOf(next) + 1;
+        lastTurn = next.name;
+        return next;
+    }
+}
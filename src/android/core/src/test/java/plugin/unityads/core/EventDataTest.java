@@ -0,0 +1,70 @@
+// EventDataTest.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class EventDataTest {
+    @Test
+    public void emptyObject() {
+        assertEquals("{}", new EventData().toString());
+    }
+
+    @Test
+    public void keepsInsertionOrder() {
+        String json = new EventData()
+                .put(EventData.PLACEMENT_ID_KEY, "video")
+                .put(EventData.STATUS_CODE_KEY, PlacementState.READY)
+                .put(EventData.STATUS_INFO_KEY, "Ready")
+                .toString();
+
+        assertEquals("{\"placementId\":\"video\",\"statusCode\":\"READY\",\"statusInfo\":\"Ready\"}", json);
+    }
+
+    @Test
+    public void leavesOutNullValues() {
+        String json = new EventData()
+                .put(EventData.PLACEMENT_ID_KEY, null)
+                .put(EventData.ERROR_CODE_KEY, "SHOW_ERROR")
+                .put(EventData.ERROR_MSG_KEY, null)
+                .toString();
+
+        assertEquals("{\"errorCode\":\"SHOW_ERROR\"}", json);
+    }
+
+    @Test
+    public void writesNumbersUnquoted() {
+        String json = new EventData()
+                .put(EventData.PLACEMENT_ID_KEY, "video")
+                .put(EventData.SHOW_LATENCY_KEY, 1.5)
+                .toString();
+
+        assertEquals("{\"placementId\":\"video\",\"showLatency\":1.5}", json);
+    }
+
+    @Test
+    public void escapesStrings() {
+        String json = new EventData()
+                .put(EventData.PLACEMENT_ID_KEY, "a\"b\\c\nd\re\tf\u0001")
+                .toString();
+
+        assertEquals("{\"placementId\":\"a\\\"b\\\\c\\nd\\re\\tf\\u0001\"}", json);
+    }
+
+    @Test
+    public void adsEventLeavesOutOptionalFields() {
+        AdsEvent event = new AdsEvent("init");
+
+        assertEquals("init", event.phase);
+        assertNull(event.type);
+        assertNull(event.data);
+        assertFalse(event.isError);
+        assertNull(event.response);
+    }
+}
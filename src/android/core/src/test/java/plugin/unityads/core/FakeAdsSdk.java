@@ -0,0 +1,114 @@
+// FakeAdsSdk.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ads SDK stand-in for the tests, recording the plugin's calls.
+ * <p>
+ * Tests make placements ready with {@link #setReady}, set the state of the others with {@link #setState} and
+ * call the listener themselves.
+ */
+final class FakeAdsSdk implements AdsSdk {
+    boolean initialized = false;
+    AdsSdkListener listener = null;
+    String gameId = null;
+    boolean testMode = false;
+    boolean perPlacementLoad = false;
+    Boolean hasUserConsent = null;
+    boolean canShow = true;                             // false when there is no activity to show ads in
+
+    final List<String> loads = new ArrayList<>();
+    final List<String> shows = new ArrayList<>();
+
+    private final Set<String> readyPlacements = new HashSet<>();
+    private final Map<String, PlacementState> states = new HashMap<>();
+
+    void setReady(String placementId, boolean isReady) {
+        if (isReady) {
+            readyPlacements.add(placementId);
+        } else {
+            readyPlacements.remove(placementId);
+        }
+    }
+
+    /**
+     * Sets the state of a placement that isn't ready, WAITING by default.
+     */
+    void setState(String placementId, PlacementState state) {
+        states.put(placementId, state);
+    }
+
+    @Override
+    public String getVersion() {
+        return "fake";
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    @Override
+    public void initialize(String gameId, boolean testMode, boolean perPlacementLoad, AdsSdkListener listener) {
+        this.gameId = gameId;
+        this.testMode = testMode;
+        this.perPlacementLoad = perPlacementLoad;
+        this.listener = listener;
+        initialized = true;
+    }
+
+    @Override
+    public void setListener(AdsSdkListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public boolean hasListener() {
+        return listener != null;
+    }
+
+    @Override
+    public boolean isReady(String placementId) {
+        return readyPlacements.contains(placementId);
+    }
+
+    @Override
+    public PlacementState getPlacementState(String placementId) {
+        if (readyPlacements.contains(placementId)) {
+            return PlacementState.READY;
+        }
+
+        PlacementState state = states.get(placementId);
+        return state != null ? state : PlacementState.WAITING;
+    }
+
+    @Override
+    public void load(String placementId) {
+        loads.add(placementId);
+    }
+
+    @Override
+    public boolean show(String placementId) {
+        if (!canShow) {
+            return false;
+        }
+
+        readyPlacements.remove(placementId);
+        shows.add(placementId);
+        return true;
+    }
+
+    @Override
+    public void setHasUserConsent(boolean hasUserConsent) {
+        this.hasUserConsent = hasUserConsent;
+    }
+}
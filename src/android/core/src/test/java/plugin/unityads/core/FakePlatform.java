@@ -0,0 +1,93 @@
+// FakePlatform.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Platform stand-in for the tests.
+ * <p>
+ * Tasks posted to the UI thread are queued until the test runs them with {@link #runUiTasks}, delayed tasks until
+ * it runs them with {@link #runDelayedTasks}, whatever their delay. Log messages are recorded.
+ */
+final class FakePlatform implements Platform {
+    private final File directory;
+    private final Deque<Runnable> uiTasks = new ArrayDeque<>();
+    private final List<Runnable> delayedTasks = new ArrayList<>();
+
+    final List<String> logs = new ArrayList<>();
+    final List<Long> delays = new ArrayList<>();
+
+    FakePlatform(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Runs the queued UI tasks, including the ones they post.
+     */
+    void runUiTasks() {
+        Runnable task;
+        while ((task = uiTasks.pollFirst()) != null) {
+            task.run();
+        }
+    }
+
+    void runDelayedTasks() {
+        List<Runnable> tasks = new ArrayList<>(delayedTasks);
+        delayedTasks.clear();
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+
+    int getUiTaskCount() {
+        return uiTasks.size();
+    }
+
+    boolean hasLog(String text) {
+        for (String log : logs) {
+            if (log.contains(text)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public void runOnUiThread(Runnable runnable) {
+        uiTasks.addLast(runnable);
+    }
+
+    @Override
+    public void runOnUiThreadAtFront(Runnable runnable) {
+        uiTasks.addFirst(runnable);
+    }
+
+    @Override
+    public void runOnUiThreadDelayed(Runnable runnable, long delayMillis) {
+        delayedTasks.add(runnable);
+        delays.add(delayMillis);
+    }
+
+    @Override
+    public File getDocumentsDirectory() {
+        return directory;
+    }
+
+    @Override
+    public File getFilesDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void log(String message) {
+        logs.add(message);
+    }
+}
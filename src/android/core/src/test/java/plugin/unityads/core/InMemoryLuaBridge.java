@@ -0,0 +1,150 @@
+// InMemoryLuaBridge.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lua stack stand-in for the tests and the stress harness.
+ * <p>
+ * Strings, booleans and numbers map to their Java counterparts, tables to {@link Map}s and functions to
+ * {@link #FUNCTION}. Like a Lua state, it must only be used from one thread.
+ */
+final class InMemoryLuaBridge implements LuaBridge {
+    static final Object FUNCTION = new Object();
+
+    private final List<Object> stack = new ArrayList<>();
+    private int nextRef = 1;
+
+    /**
+     * Replaces the stack with the arguments of a Lua call.
+     */
+    InMemoryLuaBridge call(Object... args) {
+        stack.clear();
+        stack.addAll(Arrays.asList(args));
+        return this;
+    }
+
+    private Object at(int index) {
+        int absolute = index < 0 ? stack.size() + index + 1 : index;
+        return absolute >= 1 && absolute <= stack.size() ? stack.get(absolute - 1) : null;
+    }
+
+    @Override
+    public int getTop() {
+        return stack.size();
+    }
+
+    @Override
+    public LuaValueType type(int index) {
+        Object value = at(index);
+        if (value == null) {
+            return LuaValueType.NIL;
+        } else if (value instanceof String) {
+            return LuaValueType.STRING;
+        } else if (value instanceof Boolean) {
+            return LuaValueType.BOOLEAN;
+        } else if (value instanceof Number) {
+            return LuaValueType.NUMBER;
+        } else if (value instanceof Map) {
+            return LuaValueType.TABLE;
+        } else if (value == FUNCTION) {
+            return LuaValueType.FUNCTION;
+        }
+
+        return LuaValueType.USERDATA;
+    }
+
+    @Override
+    public String typeName(int index) {
+        return type(index).name().toLowerCase();
+    }
+
+    @Override
+    public String toString(int index) {
+        Object value = at(index);
+        if (value instanceof Number) {
+            // like Lua, integral numbers have no decimals
+            double number = ((Number) value).doubleValue();
+            return number == Math.rint(number) && !Double.isInfinite(number) ? String.valueOf((long) number) : String.valueOf(number);
+        }
+        return value instanceof String ? (String) value : null;
+    }
+
+    @Override
+    public boolean toBoolean(int index) {
+        Object value = at(index);
+        return value != null && !Boolean.FALSE.equals(value);
+    }
+
+    @Override
+    public double toNumber(int index) {
+        Object value = at(index);
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+
+    @Override
+    public void pushNil() {
+        stack.add(null);
+    }
+
+    @Override
+    public void pushBoolean(boolean value) {
+        stack.add(value);
+    }
+
+    @Override
+    public void pushString(String value) {
+        stack.add(value);
+    }
+
+    @Override
+    public boolean next(int index) {
+        Map<?, ?> table = (Map<?, ?>) at(index);
+        Object key = stack.remove(stack.size() - 1);
+
+        boolean found = key == null;
+        Iterator<? extends Map.Entry<?, ?>> iterator = table.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<?, ?> entry = iterator.next();
+            if (found) {
+                stack.add(entry.getKey());
+                stack.add(entry.getValue());
+                return true;
+            }
+            found = entry.getKey().equals(key);
+        }
+
+        return false;
+    }
+
+    @Override
+    public void pop(int count) {
+        for (int i = 0; i < count; i++) {
+            stack.remove(stack.size() - 1);
+        }
+    }
+
+    @Override
+    public boolean isListener(int index, String provider) {
+        return at(index) == FUNCTION;
+    }
+
+    @Override
+    public int newRef(int index) {
+        return nextRef++;
+    }
+
+    /**
+     * Returns the value at the given index, for reading return values.
+     */
+    Object get(int index) {
+        return at(index);
+    }
+}
@@ -0,0 +1,166 @@
+// LuaSchemaTest.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LuaSchemaTest {
+    private final InMemoryLuaBridge L = new InMemoryLuaBridge();
+    private LuaSchema schema;
+    private int gameIdSlot;
+    private int testModeSlot;
+    private int placementsSlot;
+    private int maxPlacementsSlot;
+
+    @Before
+    public void setUp() {
+        schema = new LuaSchema("init(listener, options)")
+                .listener("listener", "test")
+                .options("options")
+                .requiredOption("gameId", LuaSchema.Type.STRING)
+                .option("testMode", LuaSchema.Type.BOOLEAN)
+                .option("placements", LuaSchema.Type.STRING_ARRAY)
+                .option("maxPlacements", LuaSchema.Type.NUMBER);
+
+        gameIdSlot = schema.slot("gameId");
+        testModeSlot = schema.slot("testMode");
+        placementsSlot = schema.slot("placements");
+        maxPlacementsSlot = schema.slot("maxPlacements");
+    }
+
+    private static Map<Object, Object> table(Object... keysAndValues) {
+        Map<Object, Object> table = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            table.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return table;
+    }
+
+    private String validate(Object... args) {
+        return schema.validate(L.call(args));
+    }
+
+    @Test
+    public void readsOptionsBySlot() {
+        Map<Object, Object> options = table("gameId", "1234", "testMode", true, "maxPlacements", 16.0,
+                "placements", table(1.0, "video", 2.0, "rewarded"));
+
+        assertNull(validate(InMemoryLuaBridge.FUNCTION, options));
+        assertEquals("1234", schema.getString(gameIdSlot));
+        assertTrue(schema.getBoolean(testModeSlot, false));
+        assertEquals(16.0, schema.getNumber(maxPlacementsSlot, 0), 0);
+        assertEquals(Arrays.asList("video", "rewarded"), schema.getStringArray(placementsSlot));
+    }
+
+    @Test
+    public void missingOptionsUseDefaults() {
+        assertNull(validate(InMemoryLuaBridge.FUNCTION, table("gameId", "1234")));
+
+        assertTrue(schema.has(gameIdSlot));
+        assertFalse(schema.has(testModeSlot));
+        assertFalse(schema.getBoolean(testModeSlot, false));
+        assertEquals(128.0, schema.getNumber(maxPlacementsSlot, 128), 0);
+        assertNull(schema.getStringArray(placementsSlot));
+    }
+
+    @Test
+    public void valuesOfThePreviousCallAreCleared() {
+        assertNull(validate(InMemoryLuaBridge.FUNCTION, table("gameId", "1234", "testMode", true)));
+        assertNull(validate(InMemoryLuaBridge.FUNCTION, table("gameId", "5678")));
+
+        assertEquals("5678", schema.getString(gameIdSlot));
+        assertFalse(schema.has(testModeSlot));
+    }
+
+    @Test
+    public void checksArgumentCount() {
+        assertEquals("Expected 2 arguments, got 1", validate(InMemoryLuaBridge.FUNCTION));
+        assertEquals("Expected 2 arguments, got 3", validate(InMemoryLuaBridge.FUNCTION, table("gameId", "1"), 1.0));
+
+        LuaSchema single = new LuaSchema("show(placementId)").argument("placementId", LuaSchema.Type.STRING);
+        assertEquals("Expected 1 argument, got 0", single.validate(L.call()));
+
+        LuaSchema optional = new LuaSchema("exportTrace([filename])").optionalArgument("filename", LuaSchema.Type.STRING);
+        assertNull(optional.validate(L.call()));
+        assertFalse(optional.has(optional.slot("filename")));
+        assertEquals("Expected 0 to 1 arguments, got 2", optional.validate(L.call("a", "b")));
+    }
+
+    @Test
+    public void checksArgumentTypes() {
+        assertEquals("listener expected (function), got string", validate("listener", table("gameId", "1")));
+        assertEquals("options expected (table), got string", validate(InMemoryLuaBridge.FUNCTION, "1234"));
+    }
+
+    @Test
+    public void checksOptions() {
+        assertEquals("options.gameId is required", validate(InMemoryLuaBridge.FUNCTION, table("testMode", true)));
+        assertEquals("options.gameId expected (string), got number", validate(InMemoryLuaBridge.FUNCTION, table("gameId", 1234.0)));
+        assertEquals("Invalid option 'gameID'", validate(InMemoryLuaBridge.FUNCTION, table("gameID", "1234")));
+        assertEquals("Invalid option '1'", validate(InMemoryLuaBridge.FUNCTION, table(1.0, "1234")));
+    }
+
+    @Test
+    public void ordersSequencesByKey() {
+        // next() may visit the keys in any order
+        Map<Object, Object> placements = table(2.0, "b", 1.0, "a", 3.0, "c");
+
+        assertNull(validate(InMemoryLuaBridge.FUNCTION, table("gameId", "1", "placements", placements)));
+        assertEquals(Arrays.asList("a", "b", "c"), schema.getStringArray(placementsSlot));
+    }
+
+    @Test
+    public void acceptsEmptySequence() {
+        assertNull(validate(InMemoryLuaBridge.FUNCTION, table("gameId", "1", "placements", table())));
+        assertTrue(schema.getStringArray(placementsSlot).isEmpty());
+    }
+
+    @Test
+    public void rejectsTablesThatAreNotSequences() {
+        String expected = "options.placements expected (array of strings), got table";
+
+        // dictionary
+        assertEquals(expected, validate(InMemoryLuaBridge.FUNCTION, table("gameId", "1", "placements", table("video", "video"))));
+        // gap
+        assertEquals(expected, validate(InMemoryLuaBridge.FUNCTION, table("gameId", "1", "placements", table(1.0, "a", 3.0, "c"))));
+        // not starting at 1
+        assertEquals(expected, validate(InMemoryLuaBridge.FUNCTION, table("gameId", "1", "placements", table(0.0, "a", 1.0, "b"))));
+        // fractional key
+        assertEquals(expected, validate(InMemoryLuaBridge.FUNCTION, table("gameId", "1", "placements", table(1.0, "a", 1.5, "b"))));
+        // not a string
+        assertEquals(expected, validate(InMemoryLuaBridge.FUNCTION, table("gameId", "1", "placements", table(1.0, true))));
+    }
+
+    @Test
+    public void rejectsNonTableArrays() {
+        assertEquals("options.placements expected (array of strings), got string",
+                validate(InMemoryLuaBridge.FUNCTION, table("gameId", "1", "placements", "video")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownSlot() {
+        schema.slot("unknown");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void duplicateOption() {
+        new LuaSchema("f(options)").options("options").option("a", LuaSchema.Type.STRING).option("a", LuaSchema.Type.NUMBER);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void requiredArgumentAfterOptionalOne() {
+        new LuaSchema("f([a], b)").optionalArgument("a", LuaSchema.Type.STRING).argument("b", LuaSchema.Type.STRING);
+    }
+}
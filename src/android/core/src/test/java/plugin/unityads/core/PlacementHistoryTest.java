@@ -0,0 +1,214 @@
+// PlacementHistoryTest.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PlacementHistoryTest {
+    private static final String HEADER = "# plugin.unityads placement history v1\n";
+    private static final long MILLIS = 1000000L;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("history", "");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    private String readFile() throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int read = 0;
+            while (read < bytes.length) {
+                read += input.read(bytes, read, bytes.length - read);
+            }
+            return new String(bytes, "UTF-8");
+        } finally {
+            input.close();
+        }
+    }
+
+    private void writeFile(String content) throws IOException {
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content.getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+    }
+
+    // one load cycle of the placement, ending with a fill after the given time
+    private static void fill(PlacementHistory history, String placementId, long millis) {
+        history.onLoadStarted(placementId, 1);
+        history.onFill(placementId, 1 + millis * MILLIS);
+    }
+
+    private static void noFill(PlacementHistory history, String placementId) {
+        history.onLoadStarted(placementId, 1);
+        history.onNoFill(placementId);
+    }
+
+    @Test
+    public void writesOnePlacementPerLineLeastRecentlyUsedFirst() throws IOException {
+        PlacementHistory history = new PlacementHistory(new PlacementRegistry(8));
+        fill(history, "video", 200);
+        noFill(history, "rewarded");
+        history.onShow("video");
+
+        history.write(file);
+
+        assertEquals(HEADER
+                + "rewarded\t0\t1\t0\t-1.0\n"
+                + "video\t1\t0\t1\t200.0\n", readFile());
+    }
+
+    @Test
+    public void readsWhatItWrites() {
+        PlacementHistory history = new PlacementHistory(new PlacementRegistry(8));
+        fill(history, "video", 200);
+        fill(history, "video", 300);
+        noFill(history, "rewarded");
+        history.write(file);
+
+        PlacementRegistry registry = new PlacementRegistry(8);
+        new PlacementHistory(registry).read(file);
+
+        int video = registry.find("video");
+        assertEquals(2, registry.getFills(video));
+        assertEquals(0, registry.getNoFills(video));
+        assertEquals(230.0, registry.getTimeToReadyMillis(video), 1e-9);
+        assertEquals(1, registry.getNoFills(registry.find("rewarded")));
+        assertEquals("video", registry.getPlacementId(registry.getOldest()));
+    }
+
+    @Test
+    public void readKeepsMostRecentlyUsedWhenFull() throws IOException {
+        writeFile(HEADER + "a\t1\t0\t0\t-1.0\nb\t2\t0\t0\t-1.0\nc\t3\t0\t0\t-1.0\n");
+
+        PlacementRegistry registry = new PlacementRegistry(2);
+        new PlacementHistory(registry).read(file);
+
+        assertEquals(PlacementRegistry.NO_HANDLE, registry.find("a"));
+        assertEquals(2, registry.getFills(registry.find("b")));
+        assertEquals(3, registry.getFills(registry.find("c")));
+    }
+
+    @Test
+    public void readSkipsMalformedLines() throws IOException {
+        writeFile(HEADER + "a\t1\t0\n\nb\t2\t0\t0\t-1.0\n");
+
+        PlacementRegistry registry = new PlacementRegistry(8);
+        new PlacementHistory(registry).read(file);
+
+        assertEquals(PlacementRegistry.NO_HANDLE, registry.find("a"));
+        assertEquals(2, registry.getFills(registry.find("b")));
+    }
+
+    @Test
+    public void readIgnoresOtherFormats() throws IOException {
+        writeFile("# plugin.unityads placement history v2\na\t1\t0\t0\t-1.0\n");
+
+        PlacementRegistry registry = new PlacementRegistry(8);
+        new PlacementHistory(registry).read(file);
+
+        assertEquals(PlacementRegistry.NO_HANDLE, registry.getOldest());
+    }
+
+    @Test
+    public void writeSkipsPlacementIdsThatBreakTheFormat() throws IOException {
+        PlacementHistory history = new PlacementHistory(new PlacementRegistry(8));
+        fill(history, "a\tb", 100);
+        fill(history, "c\nd", 100);
+        fill(history, "video", 100);
+
+        history.write(file);
+
+        assertEquals(HEADER + "video\t1\t0\t0\t100.0\n", readFile());
+    }
+
+    @Test
+    public void fillWithoutLoadIsNotMeasured() {
+        PlacementRegistry registry = new PlacementRegistry(8);
+        PlacementHistory history = new PlacementHistory(registry);
+        fill(history, "video", 100);
+        history.onFill("video", 500 * MILLIS);
+
+        int video = registry.find("video");
+        assertEquals(1, registry.getFills(video));
+        assertEquals(100.0, registry.getTimeToReadyMillis(video), 1e-9);
+    }
+
+    @Test
+    public void noFillAndCancelEndPendingCycleOnly() {
+        PlacementRegistry registry = new PlacementRegistry(8);
+        PlacementHistory history = new PlacementHistory(registry);
+
+        assertFalse(history.onNoFill("video"));
+
+        history.onLoadStarted("video", 1);
+        assertEquals(Collections.singletonList("video"), history.getLoadingPlacements());
+        assertTrue(history.onNoFill("video"));
+        assertFalse(history.onNoFill("video"));
+
+        history.onLoadStarted("video", 1);
+        assertTrue(history.onLoadCancelled("video"));
+        assertFalse(history.onLoadCancelled("video"));
+        assertTrue(history.getLoadingPlacements().isEmpty());
+
+        // cancelled cycles aren't counted
+        assertEquals(1, registry.getNoFills(registry.find("video")));
+    }
+
+    @Test
+    public void ranksByFillAndShowRateThenTimeToReady() {
+        PlacementHistory history = new PlacementHistory(new PlacementRegistry(8));
+        for (int i = 0; i < 4; i++) {
+            fill(history, "shown", 500);
+            history.onShow("shown");
+            fill(history, "fast", 100);
+            fill(history, "slow", 300);
+            noFill(history, "empty");
+        }
+
+        // placements without history score between those shown and those only filled
+        assertEquals(Arrays.asList("shown", "unknown", "fast", "slow", "empty"),
+                history.rank(Arrays.asList("empty", "unknown", "slow", "fast", "shown")));
+    }
+
+    @Test
+    public void rarelyFilledNeedsEnoughOutcomes() {
+        PlacementHistory history = new PlacementHistory(new PlacementRegistry(8));
+        for (int i = 0; i < 3; i++) {
+            noFill(history, "empty");
+        }
+
+        assertFalse(history.isRarelyFilled("empty"));
+        noFill(history, "empty");
+        assertTrue(history.isRarelyFilled("empty"));
+        assertFalse(history.isRarelyFilled("unknown"));
+    }
+}
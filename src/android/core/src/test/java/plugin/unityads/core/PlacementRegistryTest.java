@@ -0,0 +1,219 @@
+// PlacementRegistryTest.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+public class PlacementRegistryTest {
+    // least recently used first
+    private static List<String> placements(PlacementRegistry registry) {
+        List<String> placementIds = new ArrayList<>();
+        for (int handle = registry.getOldest(); handle != PlacementRegistry.NO_HANDLE; handle = registry.getNewer(handle)) {
+            placementIds.add(registry.getPlacementId(handle));
+        }
+        return placementIds;
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        PlacementRegistry registry = new PlacementRegistry(3);
+        registry.get("a");
+        registry.get("b");
+        registry.get("c");
+        registry.get("a");
+        registry.get("d");
+
+        assertEquals(Arrays.asList("c", "a", "d"), placements(registry));
+        assertEquals(PlacementRegistry.NO_HANDLE, registry.find("b"));
+    }
+
+    @Test
+    public void findDoesNotCountAsUse() {
+        PlacementRegistry registry = new PlacementRegistry(2);
+        registry.get("a");
+        registry.get("b");
+        registry.find("a");
+        registry.get("c");
+
+        assertEquals(Arrays.asList("b", "c"), placements(registry));
+    }
+
+    @Test
+    public void newPlacementsStartEmpty() {
+        PlacementRegistry registry = new PlacementRegistry(1);
+        int handle = registry.get("a");
+        registry.restore(handle, 3, 0, 0, 10);
+
+        // reuses the evicted handle
+        assertEquals(handle, registry.get("b"));
+        assertEquals(0, registry.getFills(handle));
+        assertEquals(-1, registry.getTimeToReadyMillis(handle), 0);
+    }
+
+    @Test
+    public void evictionKeepsCollidingPlacementsReachable() {
+        // "Aa" and "BB" have the same hash code, so these probe the same chain
+        String[] colliding = {"AaAa", "AaBB", "BBAa", "BBBB"};
+        assertEquals(colliding[0].hashCode(), colliding[3].hashCode());
+
+        PlacementRegistry registry = new PlacementRegistry(3);
+        for (String placementId : colliding) {
+            registry.get(placementId);
+        }
+
+        // the head of the chain was removed, the others moved back into its slot
+        assertEquals(PlacementRegistry.NO_HANDLE, registry.find("AaAa"));
+        for (int i = 1; i < colliding.length; i++) {
+            assertEquals(colliding[i], registry.getPlacementId(registry.find(colliding[i])));
+        }
+
+        // and from the middle of the chain
+        registry.get("AaBB");
+        registry.get("BBBB");
+        registry.get("other");
+
+        assertEquals(PlacementRegistry.NO_HANDLE, registry.find("BBAa"));
+        assertEquals(Arrays.asList("AaBB", "BBBB", "other"), placements(registry));
+        for (String placementId : placements(registry)) {
+            assertEquals(placementId, registry.getPlacementId(registry.find(placementId)));
+        }
+    }
+
+    // get() would count as a use of an access ordered map
+    private static Integer peek(Map<String, Integer> model, String placementId) {
+        for (Map.Entry<String, Integer> entry : model.entrySet()) {
+            if (entry.getKey().equals(placementId)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void matchesLruModel() {
+        Random random = new Random(1);
+
+        for (int round = 0; round < 50; round++) {
+            final int capacity = 1 + random.nextInt(40);
+            PlacementRegistry registry = new PlacementRegistry(capacity);
+            Map<String, Integer> model = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                    return size() > capacity;
+                }
+            };
+
+            for (int i = 0; i < 2000; i++) {
+                // a few colliding IDs among plain ones
+                String placementId = random.nextInt(4) == 0 ? (random.nextBoolean() ? "Aa" : "BB") + random.nextInt(8) : "p" + random.nextInt(60);
+
+                if (random.nextInt(3) > 0) {
+                    int handle = registry.get(placementId);
+                    registry.addFill(handle, 10);
+                    Integer fills = model.get(placementId);
+                    model.put(placementId, fills == null ? 1 : fills + 1);
+                    assertEquals(new ArrayList<>(model.keySet()), placements(registry));
+                } else {
+                    int handle = registry.find(placementId);
+                    Integer fills = peek(model, placementId);
+                    if (fills == null) {
+                        assertEquals(PlacementRegistry.NO_HANDLE, handle);
+                    } else {
+                        assertEquals(placementId, registry.getPlacementId(handle));
+                        assertEquals((int) fills, registry.getFills(handle));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void growingKeepsHandles() {
+        PlacementRegistry registry = new PlacementRegistry(1000);
+        int[] handles = new int[100];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = registry.get("p" + i);
+            registry.restore(handles[i], 0, 0, i, -1);
+        }
+
+        for (int i = 0; i < handles.length; i++) {
+            assertEquals(handles[i], registry.find("p" + i));
+            assertEquals(i, registry.getShows(handles[i]));
+        }
+    }
+
+    @Test
+    public void shrinkingKeepsMostRecentlyUsed() {
+        PlacementRegistry registry = new PlacementRegistry(100);
+        for (int i = 0; i < 50; i++) {
+            int handle = registry.get("p" + i);
+            registry.restore(handle, i, 0, 0, -1);
+        }
+        registry.get("p0");
+
+        registry.setCapacity(3);
+
+        assertEquals(Arrays.asList("p48", "p49", "p0"), placements(registry));
+        assertEquals(49, registry.getFills(registry.find("p49")));
+
+        registry.get("p1");
+        assertEquals(Arrays.asList("p49", "p0", "p1"), placements(registry));
+    }
+
+    @Test
+    public void raisingCapacityKeepsPlacements() {
+        PlacementRegistry registry = new PlacementRegistry(2);
+        registry.get("a");
+        registry.get("b");
+
+        registry.setCapacity(40);
+        for (int i = 0; i < 30; i++) {
+            registry.get("p" + i);
+        }
+
+        assertEquals("a", registry.getPlacementId(registry.getOldest()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroCapacity() {
+        new PlacementRegistry(0);
+    }
+
+    @Test
+    public void placementJSONIsBuiltOnce() {
+        PlacementRegistry registry = new PlacementRegistry(2);
+        String json = registry.getPlacementJSON("video");
+
+        assertEquals("{\"placementId\":\"video\"}", json);
+        assertSame(json, registry.getPlacementJSON("video"));
+    }
+
+    @Test
+    public void resetLoadCyclesAppliesToNewPlacements() {
+        PlacementRegistry registry = new PlacementRegistry(4);
+        int a = registry.get("a");
+
+        registry.resetLoadCycles(42);
+        assertEquals(42, registry.getLoadStartedNanos(a));
+        int b = registry.get("b");
+        assertEquals(42, registry.getLoadStartedNanos(b));
+
+        registry.resetLoadCycles(0);
+        assertEquals(0, registry.getLoadStartedNanos(a));
+        int c = registry.get("c");
+        assertNotEquals(42, registry.getLoadStartedNanos(c));
+    }
+}
@@ -0,0 +1,200 @@
+// PreloadSchedulerTest.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class PreloadSchedulerTest {
+    private final FakeAdsSdk sdk = new FakeAdsSdk();
+    private final FakePlatform platform = new FakePlatform(new File("."));
+    private PlacementRegistry registry;
+    private PlacementHistory history;
+    private PreloadScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        registry = new PlacementRegistry(16);
+        history = new PlacementHistory(registry);
+        scheduler = new PreloadScheduler(sdk, history, platform);
+    }
+
+    @Test
+    public void warmsFirstPlacementsAndDefersTheOthers() {
+        scheduler.start(Arrays.asList("a", "b", "c", "d"));
+
+        assertEquals(Arrays.asList("a", "b"), sdk.loads);
+        assertEquals(Collections.singletonList(PreloadScheduler.WARM_UP_TIMEOUT_MILLIS), platform.delays);
+    }
+
+    @Test
+    public void warmsBestRankedPlacements() {
+        for (int i = 0; i < 4; i++) {
+            history.onLoadStarted("d", 1);
+            history.onFill("d", 2);
+            history.onShow("d");
+        }
+
+        scheduler.start(Arrays.asList("a", "b", "c", "d"));
+
+        assertEquals(Arrays.asList("d", "a"), sdk.loads);
+    }
+
+    @Test
+    public void releasesDeferredOnceEveryWarmPlacementSettled() {
+        scheduler.start(Arrays.asList("a", "b", "c", "d"));
+
+        scheduler.onSettled("a");
+        scheduler.onSettled("a");
+        assertEquals(Arrays.asList("a", "b"), sdk.loads);
+
+        scheduler.onSettled("b");
+        assertEquals(Arrays.asList("a", "b", "c", "d"), sdk.loads);
+
+        // nothing left to release
+        scheduler.onSettled("c");
+        platform.runDelayedTasks();
+        assertEquals(4, sdk.loads.size());
+    }
+
+    @Test
+    public void defersRarelyFilledPlacements() {
+        for (int i = 0; i < 4; i++) {
+            history.onLoadStarted("a", 1);
+            history.onNoFill("a");
+        }
+
+        scheduler.start(Arrays.asList("a", "b", "c"));
+        assertEquals(Arrays.asList("b", "c"), sdk.loads);
+
+        scheduler.onSettled("b");
+        scheduler.onSettled("c");
+        assertEquals(Arrays.asList("b", "c", "a"), sdk.loads);
+    }
+
+    @Test
+    public void warmsAtLeastOnePlacement() {
+        for (int i = 0; i < 4; i++) {
+            history.onLoadStarted("a", 1);
+            history.onNoFill("a");
+        }
+
+        scheduler.start(Collections.singletonList("a"));
+
+        assertEquals(Collections.singletonList("a"), sdk.loads);
+    }
+
+    @Test
+    public void loadsRequestedPlacementRightAway() {
+        scheduler.start(Arrays.asList("a", "b", "c", "d"));
+
+        scheduler.onRequested("d");
+        scheduler.onRequested("d");
+        scheduler.onRequested("a");
+        assertEquals(Arrays.asList("a", "b", "d"), sdk.loads);
+
+        scheduler.onSettled("a");
+        scheduler.onSettled("b");
+        assertEquals(Arrays.asList("a", "b", "d", "c"), sdk.loads);
+    }
+
+    @Test
+    public void warmUpTimeoutReleasesDeferred() {
+        scheduler.start(Arrays.asList("a", "b", "c", "d"));
+        scheduler.onSettled("a");
+
+        platform.runDelayedTasks();
+        assertEquals(Arrays.asList("a", "b", "c", "d"), sdk.loads);
+
+        // the warm placement settling late doesn't load anything again
+        scheduler.onSettled("b");
+        assertEquals(4, sdk.loads.size());
+    }
+
+    @Test
+    public void timeoutOfPreviousWarmUpIsIgnored() {
+        scheduler.start(Arrays.asList("a", "b", "c"));
+        scheduler.start(Arrays.asList("x", "y", "z"));
+        sdk.loads.clear();
+
+        // runs both timeouts, the first one is stale
+        platform.runDelayedTasks();
+
+        assertEquals(Collections.singletonList("z"), sdk.loads);
+    }
+
+    @Test
+    public void reloadsPlacementAfterShow() {
+        scheduler.start(Arrays.asList("a", "b", "c"));
+        sdk.loads.clear();
+
+        scheduler.onFinished("a");
+        // deferred, loaded once released
+        scheduler.onFinished("c");
+        // not passed to init()
+        scheduler.onFinished("other");
+
+        assertEquals(Collections.singletonList("a"), sdk.loads);
+    }
+
+    @Test
+    public void reloadsUnfilledPlacementOnRequestAfterBackoff() {
+        scheduler.start(Collections.singletonList("a"));
+        history.onNoFill("a");
+        scheduler.onUnfilled("a");
+
+        scheduler.onRequested("a");
+        assertEquals(Collections.singletonList("a"), sdk.loads);
+        assertEquals(PreloadScheduler.RELOAD_BACKOFF_MILLIS, (long) platform.delays.get(1));
+
+        platform.runDelayedTasks();
+        scheduler.onRequested("a");
+        scheduler.onRequested("a");
+        assertEquals(Arrays.asList("a", "a"), sdk.loads);
+
+        history.onFill("a", System.nanoTime());
+        assertEquals(1, registry.getFills(registry.find("a")));
+        assertEquals(1, registry.getNoFills(registry.find("a")));
+    }
+
+    @Test
+    public void reloadsOnlyPlacementsPassedToInit() {
+        scheduler.start(Collections.singletonList("a"));
+
+        scheduler.onUnfilled("other");
+        platform.runDelayedTasks();
+        scheduler.onRequested("other");
+
+        assertEquals(Collections.singletonList("a"), sdk.loads);
+        assertEquals(1, platform.delays.size());
+    }
+
+    @Test
+    public void stopForgetsPlacements() {
+        scheduler.start(Arrays.asList("a", "b", "c"));
+        scheduler.onUnfilled("a");
+
+        scheduler.stop();
+        platform.runDelayedTasks();
+        scheduler.onRequested("a");
+        scheduler.onRequested("c");
+        scheduler.onFinished("b");
+
+        assertEquals(Arrays.asList("a", "b"), sdk.loads);
+    }
+
+    @Test
+    public void startsLoadCycles() {
+        scheduler.start(Arrays.asList("a", "b", "c"));
+
+        assertEquals(Arrays.asList("a", "b"), history.getLoadingPlacements());
+    }
+}
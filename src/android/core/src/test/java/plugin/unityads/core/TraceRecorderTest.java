@@ -0,0 +1,122 @@
+// TraceRecorderTest.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+import org.junit.Test;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TraceRecorderTest {
+    private static final String EMPTY = "{\"displayTimeUnit\":\"ms\",\"traceEvents\":[]}";
+
+    private static int count(String json, String text) {
+        int count = 0;
+        for (int i = json.indexOf(text); i >= 0; i = json.indexOf(text, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void recordsNothingWhileDisabled() {
+        TraceRecorder tracer = new TraceRecorder(8);
+        long token = tracer.begin();
+        tracer.end(TraceRecorder.CATEGORY_LUA, "unityads.show", token);
+        tracer.mark(TraceRecorder.CATEGORY_SDK, "onUnityAdsReady", "video");
+
+        assertEquals(0, token);
+        assertEquals(EMPTY, tracer.toJSON());
+    }
+
+    @Test
+    public void writesCompleteAndInstantEvents() {
+        TraceRecorder tracer = new TraceRecorder(8);
+        tracer.setEnabled(true);
+        tracer.end(TraceRecorder.CATEGORY_LUA, "unityads.show", tracer.begin(), "video");
+        tracer.mark(TraceRecorder.CATEGORY_SDK, "onUnityAdsReady", null);
+        String json = tracer.toJSON();
+
+        long tid = Thread.currentThread().getId();
+        assertTrue(json.startsWith("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":"
+                + tid + ",\"args\":{\"name\":\"" + Thread.currentThread().getName() + "\"}},"));
+        assertTrue(json.endsWith("]}"));
+
+        Matcher complete = Pattern.compile("\\{\"name\":\"unityads\\.show\",\"cat\":\"lua\",\"ph\":\"X\",\"ts\":-?\\d+\\.\\d{3},\"dur\":\\d+\\.\\d{3},"
+                + "\"pid\":1,\"tid\":" + tid + ",\"args\":\\{\"detail\":\"video\"\\}\\}").matcher(json);
+        assertTrue(json, complete.find());
+
+        Matcher instant = Pattern.compile("\\{\"name\":\"onUnityAdsReady\",\"cat\":\"sdk\",\"ph\":\"i\",\"ts\":-?\\d+\\.\\d{3},\"s\":\"t\","
+                + "\"pid\":1,\"tid\":" + tid + "\\}").matcher(json);
+        assertTrue(json, instant.find());
+        assertTrue(complete.start() < instant.start());
+    }
+
+    @Test
+    public void namesEachThreadOnce() throws InterruptedException {
+        final TraceRecorder tracer = new TraceRecorder(8);
+        tracer.setEnabled(true);
+        tracer.mark(TraceRecorder.CATEGORY_SDK, "a", null);
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                tracer.mark(TraceRecorder.CATEGORY_SDK, "b", null);
+            }
+        }, "sdk thread");
+        thread.start();
+        thread.join();
+
+        tracer.mark(TraceRecorder.CATEGORY_SDK, "c", null);
+        String json = tracer.toJSON();
+
+        assertEquals(2, count(json, "\"thread_name\""));
+        assertEquals(1, count(json, "\"args\":{\"name\":\"sdk thread\"}"));
+    }
+
+    @Test
+    public void escapesStrings() {
+        TraceRecorder tracer = new TraceRecorder(8);
+        tracer.setEnabled(true);
+        tracer.mark(TraceRecorder.CATEGORY_SDK, "onUnityAdsError", "a\"b\\c\n");
+
+        assertTrue(tracer.toJSON().contains("\"args\":{\"detail\":\"a\\\"b\\\\c\\u000a\"}"));
+    }
+
+    @Test
+    public void keepsNewestEventsWhenFull() {
+        TraceRecorder tracer = new TraceRecorder(2);
+        tracer.setEnabled(true);
+        tracer.mark(TraceRecorder.CATEGORY_SDK, "first", null);
+        tracer.mark(TraceRecorder.CATEGORY_SDK, "second", null);
+        tracer.mark(TraceRecorder.CATEGORY_SDK, "third", null);
+        String json = tracer.toJSON();
+
+        assertFalse(json.contains("\"first\""));
+        assertTrue(json.indexOf("\"second\"") < json.indexOf("\"third\""));
+    }
+
+    @Test
+    public void enablingStartsAnEmptyRecording() {
+        TraceRecorder tracer = new TraceRecorder(8);
+        tracer.setEnabled(true);
+        tracer.mark(TraceRecorder.CATEGORY_SDK, "first", null);
+
+        // still enabled, kept
+        tracer.setEnabled(true);
+        assertTrue(tracer.toJSON().contains("\"first\""));
+
+        // disabling keeps the recording for export
+        tracer.setEnabled(false);
+        assertTrue(tracer.toJSON().contains("\"first\""));
+
+        tracer.setEnabled(true);
+        assertEquals(EMPTY, tracer.toJSON());
+    }
+}
@@ -0,0 +1,431 @@
+// UnityAdsPluginTest.java
+// UnityAds Plugin
+//
+
+package plugin.unityads.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UnityAdsPluginTest {
+    private static final int LISTENER_REF = 1;
+
+    // delivers nothing, records the events in dispatch order
+    private static final class RecordingDispatcher implements EventDispatcher {
+        final List<AdsEvent> events = new ArrayList<>();
+
+        @Override
+        public void dispatch(int listenerRef, AdsEvent event) {
+            assertEquals(LISTENER_REF, listenerRef);
+            events.add(event);
+        }
+    }
+
+    private File directory;
+    private FakeAdsSdk sdk;
+    private FakePlatform platform;
+    private UnityAdsPlugin plugin;
+    private RecordingDispatcher dispatcher;
+    private final InMemoryLuaBridge L = new InMemoryLuaBridge();
+    private final Map<String, LuaFunction> functions = new LinkedHashMap<>();
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("plugin", "");
+        directory.delete();
+        directory.mkdirs();
+
+        sdk = new FakeAdsSdk();
+        platform = new FakePlatform(directory);
+        plugin = new UnityAdsPlugin(sdk, platform);
+        dispatcher = new RecordingDispatcher();
+        plugin.onRuntimeLoaded(dispatcher);
+
+        for (LuaFunction function : plugin.getLuaFunctions()) {
+            functions.put(function.getName(), function);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private static Map<Object, Object> table(Object... keysAndValues) {
+        Map<Object, Object> table = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            table.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return table;
+    }
+
+    // calls the Lua function, returns its first result
+    private Object call(String name, Object... args) {
+        int results = functions.get(name).invoke(L.call(args));
+        return results > 0 ? L.get(-results) : null;
+    }
+
+    private void init(Map<Object, Object> options) {
+        call("init", InMemoryLuaBridge.FUNCTION, options);
+        platform.runUiTasks();
+    }
+
+    private List<String> phases() {
+        List<String> phases = new ArrayList<>();
+        for (AdsEvent event : dispatcher.events) {
+            phases.add(event.phase);
+        }
+        return phases;
+    }
+
+    private AdsEvent lastEvent() {
+        return dispatcher.events.get(dispatcher.events.size() - 1);
+    }
+
+    // -------------------------------------------------------------------
+    // init
+    // -------------------------------------------------------------------
+
+    @Test
+    public void initInitializesSdkOnUiThread() {
+        call("init", InMemoryLuaBridge.FUNCTION, table("gameId", "1234", "testMode", true));
+        assertFalse(sdk.initialized);
+        assertTrue(dispatcher.events.isEmpty());
+
+        platform.runUiTasks();
+
+        assertTrue(sdk.initialized);
+        assertEquals("1234", sdk.gameId);
+        assertTrue(sdk.testMode);
+        assertFalse(sdk.perPlacementLoad);
+        assertTrue(sdk.loads.isEmpty());
+        assertEquals(Collections.singletonList("init"), phases());
+        assertNull(dispatcher.events.get(0).type);
+    }
+
+    @Test
+    public void initLoadsPlacementsOnce() {
+        init(table("gameId", "1234", "placements", table(1.0, "a", 2.0, "b", 3.0, "a", 4.0, "c")));
+
+        assertTrue(sdk.perPlacementLoad);
+        assertEquals(Arrays.asList("a", "b"), sdk.loads);
+
+        sdk.listener.onReady("a");
+        sdk.listener.onReady("b");
+        assertEquals(Arrays.asList("a", "b", "c"), sdk.loads);
+    }
+
+    @Test
+    public void initRejectsInvalidOptions() {
+        call("init", InMemoryLuaBridge.FUNCTION, table("testMode", true));
+        call("init", InMemoryLuaBridge.FUNCTION, table("gameId", "1234", "placements", table("a", "a")));
+        call("init", "listener", table("gameId", "1234"));
+
+        assertTrue(platform.hasLog("ERROR: unityads.init(listener, options), options.gameId is required"));
+        assertTrue(platform.hasLog("options.placements expected (array of strings), got table"));
+        assertTrue(platform.hasLog("listener expected (function), got string"));
+        assertEquals(0, platform.getUiTaskCount());
+    }
+
+    @Test
+    public void initRejectsMaxPlacementsOutOfRange() {
+        for (double maxPlacements : new double[]{0, -1, 10001, 1e10, 1 << 29, Double.NaN, Double.POSITIVE_INFINITY}) {
+            call("init", InMemoryLuaBridge.FUNCTION, table("gameId", "1234", "maxPlacements", maxPlacements));
+        }
+
+        assertEquals(0, platform.getUiTaskCount());
+        assertTrue(platform.hasLog("options.maxPlacements must be between 1 and 10000"));
+
+        init(table("gameId", "1234", "maxPlacements", 10000.0));
+        assertTrue(sdk.initialized);
+    }
+
+    @Test
+    public void initOnlyOnce() {
+        init(table("gameId", "1234"));
+        call("init", InMemoryLuaBridge.FUNCTION, table("gameId", "5678"));
+
+        assertTrue(platform.hasLog("init() should only be called once"));
+        assertEquals(0, platform.getUiTaskCount());
+    }
+
+    @Test
+    public void functionsRequireInit() {
+        assertNull(call("isLoaded", "video"));
+        call("show", "video");
+        call("setHasUserConsent", true);
+
+        assertTrue(platform.hasLog("unityads.init() must be called before calling other API functions"));
+        assertNull(sdk.hasUserConsent);
+        assertTrue(dispatcher.events.isEmpty());
+    }
+
+    // -------------------------------------------------------------------
+    // events
+    // -------------------------------------------------------------------
+
+    @Test
+    public void sdkCallbacksAreDispatchedInOrder() {
+        init(table("gameId", "1234"));
+
+        sdk.listener.onReady("video");
+        sdk.listener.onStart("video");
+        sdk.listener.onFinish("video", FinishState.COMPLETED);
+        sdk.listener.onReady("rewarded");
+        sdk.listener.onFinish("rewarded", FinishState.SKIPPED);
+        sdk.listener.onFinish("video", FinishState.ERROR);
+
+        assertEquals(Arrays.asList("init", "loaded", "completed", "loaded", "skipped", "failed"), phases());
+
+        AdsEvent loaded = dispatcher.events.get(1);
+        assertEquals("unityAd", loaded.type);
+        assertEquals("{\"placementId\":\"video\"}", loaded.data);
+        assertFalse(loaded.isError);
+        assertEquals("{\"placementId\":\"rewarded\"}", dispatcher.events.get(4).data);
+
+        AdsEvent failed = lastEvent();
+        assertTrue(failed.isError);
+        assertEquals("showFailed", failed.response);
+    }
+
+    @Test
+    public void sdkErrorIsDispatched() {
+        init(table("gameId", "1234"));
+
+        sdk.listener.onError("VIDEO_PLAYER_ERROR", "player crashed");
+        sdk.listener.onError("SOMETHING_NEW", "?");
+
+        AdsEvent error = dispatcher.events.get(1);
+        assertEquals("failed", error.phase);
+        assertTrue(error.isError);
+        assertEquals("player crashed", error.response);
+        assertEquals("{\"errorCode\":\"VIDEO_PLAYER_ERROR\",\"errorMsg\":\"Video Player failure\"}", error.data);
+        assertEquals("{\"errorCode\":\"SOMETHING_NEW\",\"errorMsg\":\"Unknown error code (SOMETHING_NEW)\"}", lastEvent().data);
+    }
+
+    @Test
+    public void eventsAreDroppedOnceRuntimeExits() {
+        init(table("gameId", "1234"));
+        AdsSdkListener listener = sdk.listener;
+
+        plugin.onRuntimeExiting();
+        listener.onReady("video");
+
+        assertNull(sdk.listener);
+        assertEquals(Collections.singletonList("init"), phases());
+    }
+
+    // -------------------------------------------------------------------
+    // isLoaded
+    // -------------------------------------------------------------------
+
+    @Test
+    public void isLoadedReturnsReadinessAndDispatchesStatus() {
+        init(table("gameId", "1234"));
+        sdk.setReady("video", true);
+        sdk.setState("banner", PlacementState.NO_FILL);
+
+        assertEquals(true, call("isLoaded", "video"));
+        assertEquals(false, call("isLoaded", "banner"));
+
+        assertEquals(Arrays.asList("init", "placementStatus", "placementStatus"), phases());
+        assertEquals("{\"placementId\":\"video\",\"statusCode\":\"READY\",\"statusInfo\":\"Ready\"}", dispatcher.events.get(1).data);
+        assertEquals("{\"placementId\":\"banner\",\"statusCode\":\"NO_FILL\",\"statusInfo\":\"No fill\"}", lastEvent().data);
+    }
+
+    @Test
+    public void isLoadedLoadsDeferredPlacement() {
+        init(table("gameId", "1234", "placements", table(1.0, "a", 2.0, "b", 3.0, "c")));
+
+        call("isLoaded", "c");
+
+        assertEquals(Arrays.asList("a", "b", "c"), sdk.loads);
+    }
+
+    @Test
+    public void isLoadedLoadsPlacementAgainAfterNoFill() throws IOException {
+        init(table("gameId", "1234", "placements", table(1.0, "a")));
+        sdk.setState("a", PlacementState.NO_FILL);
+
+        assertEquals(false, call("isLoaded", "a"));
+        platform.runDelayedTasks();
+        sdk.setState("a", PlacementState.WAITING);
+        assertEquals(false, call("isLoaded", "a"));
+        assertEquals(Arrays.asList("a", "a"), sdk.loads);
+
+        sdk.setReady("a", true);
+        sdk.listener.onReady("a");
+        assertEquals("loaded", lastEvent().phase);
+
+        // one no fill, then one fill
+        plugin.onRuntimeSuspended();
+        String history = new String(Files.readAllBytes(new File(directory, "plugin.unityads.history").toPath()), "UTF-8");
+        assertTrue(history.contains("\na\t1\t1\t0\t"));
+    }
+
+    @Test
+    public void unavailableWarmPlacementsReleaseDeferred() {
+        init(table("gameId", "1234", "placements", table(1.0, "a", 2.0, "b", 3.0, "c")));
+        sdk.setState("a", PlacementState.DISABLED);
+        sdk.setState("b", PlacementState.NOT_AVAILABLE);
+
+        sdk.listener.onError("INTERNAL_ERROR", "configuration");
+
+        assertEquals(Arrays.asList("a", "b", "c"), sdk.loads);
+    }
+
+    // -------------------------------------------------------------------
+    // show
+    // -------------------------------------------------------------------
+
+    @Test
+    public void showDispatchesDisplayedBeforeFinish() {
+        init(table("gameId", "1234"));
+        sdk.setReady("video", true);
+
+        call("show", "video");
+        assertTrue(sdk.shows.isEmpty());
+
+        platform.runUiTasks();
+        sdk.listener.onFinish("video", FinishState.COMPLETED);
+
+        assertEquals(Collections.singletonList("video"), sdk.shows);
+        assertEquals(Arrays.asList("init", "displayed", "completed"), phases());
+        assertTrue(dispatcher.events.get(1).data.matches("\\{\"placementId\":\"video\",\"showLatency\":[0-9.E-]+\\}"));
+    }
+
+    @Test
+    public void showRunsAheadOfPendingUiWork() {
+        init(table("gameId", "1234"));
+        sdk.setReady("video", true);
+        final List<String> order = new ArrayList<>();
+        platform.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                order.add("pending " + sdk.shows.size());
+            }
+        });
+
+        call("show", "video");
+        platform.runUiTasks();
+
+        assertEquals(Collections.singletonList("pending 1"), order);
+    }
+
+    @Test
+    public void showOfPlacementNotLoaded() {
+        init(table("gameId", "1234"));
+
+        call("show", "video");
+
+        assertTrue(platform.hasLog("WARNING: unityads.show(placementId), placementId 'video' not loaded"));
+        assertEquals(0, platform.getUiTaskCount());
+    }
+
+    @Test
+    public void showOfPlacementGoneOnUiThread() {
+        init(table("gameId", "1234"));
+        sdk.setReady("video", true);
+
+        call("show", "video");
+        sdk.setReady("video", false);
+        platform.runUiTasks();
+
+        assertTrue(sdk.shows.isEmpty());
+        AdsEvent failed = lastEvent();
+        assertEquals("failed", failed.phase);
+        assertEquals("showFailed", failed.response);
+        assertEquals("{\"placementId\":\"video\"}", failed.data);
+    }
+
+    @Test
+    public void showWithoutActivity() {
+        init(table("gameId", "1234"));
+        sdk.setReady("video", true);
+        sdk.canShow = false;
+
+        call("show", "video");
+        platform.runUiTasks();
+
+        assertTrue(platform.hasLog("placementId 'video' could not be shown"));
+        assertEquals(Collections.singletonList("init"), phases());
+    }
+
+    @Test
+    public void showRestoresLostListener() {
+        init(table("gameId", "1234"));
+        sdk.setReady("video", true);
+        sdk.listener = null;
+
+        call("show", "video");
+        platform.runUiTasks();
+        sdk.listener.onFinish("video", FinishState.SKIPPED);
+
+        assertEquals(Arrays.asList("init", "displayed", "skipped"), phases());
+    }
+
+    // -------------------------------------------------------------------
+    // other functions
+    // -------------------------------------------------------------------
+
+    @Test
+    public void setHasUserConsentIsForwarded() {
+        init(table("gameId", "1234"));
+
+        call("setHasUserConsent", false);
+
+        assertEquals(false, sdk.hasUserConsent);
+    }
+
+    @Test
+    public void exportTraceWritesToDocumentsDirectory() {
+        call("setTraceEnabled", true);
+        init(table("gameId", "1234"));
+
+        Object path = call("exportTrace", "trace.json");
+
+        File file = new File(directory, "trace.json");
+        assertEquals(file.getPath(), path);
+        assertTrue(file.length() > 0);
+        assertTrue(((String) call("exportTrace")).contains("\"unityads.init\""));
+    }
+
+    @Test
+    public void exportTraceRejectsPaths() {
+        for (String filename : new String[]{"", ".", "..", "../trace.json", "logs/trace.json", "logs\\trace.json"}) {
+            assertNull(call("exportTrace", filename));
+        }
+
+        assertTrue(platform.hasLog("invalid filename '../trace.json', expected a file name without directories"));
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void historyIsSavedWhenSuspended() {
+        init(table("gameId", "1234", "placements", table(1.0, "video")));
+        sdk.listener.onReady("video");
+
+        plugin.onRuntimeSuspended();
+
+        assertTrue(new File(directory, "plugin.unityads.history").isFile());
+    }
+}
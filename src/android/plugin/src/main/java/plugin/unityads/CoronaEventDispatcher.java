@@ -0,0 +1,80 @@
+// CoronaEventDispatcher.java
+// UnityAds Plugin
+//
+
+package plugin.unityads;
+
+import com.naef.jnlua.LuaState;
+
+import com.ansca.corona.CoronaLua;
+import com.ansca.corona.CoronaLuaEvent;
+import com.ansca.corona.CoronaRuntime;
+import com.ansca.corona.CoronaRuntimeTask;
+import com.ansca.corona.CoronaRuntimeTaskDispatcher;
+
+import plugin.unityads.core.AdsEvent;
+import plugin.unityads.core.EventDispatcher;
+import plugin.unityads.core.TraceRecorder;
+import plugin.unityads.core.UnityAdsPlugin;
+
+/**
+ * Delivers plugin events to Lua through the Corona runtime's task queue.
+ */
+class CoronaEventDispatcher implements EventDispatcher {
+    private final CoronaRuntimeTaskDispatcher coronaRuntimeTaskDispatcher;
+    private final TraceRecorder tracer;
+
+    CoronaEventDispatcher(CoronaRuntime runtime, TraceRecorder tracer) {
+        this.coronaRuntimeTaskDispatcher = new CoronaRuntimeTaskDispatcher(runtime);
+        this.tracer = tracer;
+    }
+
+    @Override
+    public void dispatch(final int listenerRef, final AdsEvent event) {
+        final long queuedAt = tracer.begin();
+
+        coronaRuntimeTaskDispatcher.send(new CoronaRuntimeTask() {
+            @Override
+            public void executeUsing(CoronaRuntime runtime) {
+                tracer.end(TraceRecorder.CATEGORY_RUNTIME, "taskQueue", queuedAt);
+                long dispatchStart = tracer.begin();
+
+                try {
+                    LuaState L = runtime.getLuaState();
+                    CoronaLua.newEvent(L, AdsEvent.NAME);
+
+                    // add event parameters
+                    if (event.phase != null) {
+                        L.pushString(event.phase);
+                        L.setField(-2, AdsEvent.PHASE_KEY);
+                    }
+                    if (event.type != null) {
+                        L.pushString(event.type);
+                        L.setField(-2, AdsEvent.TYPE_KEY);
+                    }
+                    if (event.data != null) {
+                        L.pushString(event.data);
+                        L.setField(-2, AdsEvent.DATA_KEY);
+                    }
+                    if (event.response != null) {
+                        L.pushString(event.response);
+                        L.setField(-2, CoronaLuaEvent.RESPONSE_KEY);
+                    }
+
+                    L.pushBoolean(event.isError);
+                    L.setField(-2, CoronaLuaEvent.ISERROR_KEY);
+
+                    // add provider
+                    L.pushString(UnityAdsPlugin.PROVIDER_NAME);
+                    L.setField(-2, CoronaLuaEvent.PROVIDER_KEY);
+
+                    CoronaLua.dispatchEvent(L, listenerRef, 0);
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                }
+
+                tracer.end(TraceRecorder.CATEGORY_RUNTIME, "dispatchEvent", dispatchStart, event.phase);
+            }
+        });
+    }
+}
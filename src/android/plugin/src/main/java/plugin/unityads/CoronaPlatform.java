@@ -0,0 +1,59 @@
+// CoronaPlatform.java
+// UnityAds Plugin
+//
+
+package plugin.unityads;
+
+import com.ansca.corona.CoronaActivity;
+import com.ansca.corona.CoronaEnvironment;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+
+import plugin.unityads.core.Platform;
+
+/**
+ * Host services provided by the Corona Android runtime.
+ */
+class CoronaPlatform implements Platform {
+    private static final String CORONA_TAG = "Corona";
+
+    // reused for every post, the main looper lives as long as the process
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public void runOnUiThread(Runnable runnable) {
+        CoronaActivity coronaActivity = CoronaEnvironment.getCoronaActivity();
+        if (coronaActivity != null) {
+            coronaActivity.runOnUiThread(runnable);
+        }
+    }
+
+    @Override
+    public void runOnUiThreadAtFront(Runnable runnable) {
+        mainHandler.postAtFrontOfQueue(runnable);
+    }
+
+    @Override
+    public void runOnUiThreadDelayed(Runnable runnable, long delayMillis) {
+        mainHandler.postDelayed(runnable, delayMillis);
+    }
+
+    @Override
+    public File getDocumentsDirectory() {
+        return CoronaEnvironment.getDocumentsDirectory(CoronaEnvironment.getApplicationContext());
+    }
+
+    @Override
+    public File getFilesDirectory() {
+        return CoronaEnvironment.getApplicationContext().getFilesDir();
+    }
+
+    @Override
+    public void log(String message) {
+        Log.i(CORONA_TAG, message);
+    }
+}
@@ -0,0 +1,43 @@
+// CoronaUnityAdsDelegate.java
+// UnityAds Plugin
+//
+
+package plugin.unityads;
+
+// Plugin imports
+import com.unity3d.ads.IUnityAdsListener;
+import com.unity3d.ads.UnityAds;
+
+import plugin.unityads.core.AdsSdkListener;
+import plugin.unityads.core.FinishState;
+
+/**
+ * Forwards Unity Ads SDK callbacks to the plugin core.
+ */
+class CoronaUnityAdsDelegate implements IUnityAdsListener {
+    private final AdsSdkListener listener;
+
+    CoronaUnityAdsDelegate(AdsSdkListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onUnityAdsReady(String placementId) {
+        listener.onReady(placementId);
+    }
+
+    @Override
+    public void onUnityAdsStart(String placementId) {
+        listener.onStart(placementId);
+    }
+
+    @Override
+    public void onUnityAdsFinish(String placementId, UnityAds.FinishState finishState) {
+        listener.onFinish(placementId, finishState != null ? FinishState.valueOf(finishState.name()) : null);
+    }
+
+    @Override
+    public void onUnityAdsError(UnityAds.UnityAdsError unityAdsError, String message) {
+        listener.onError(unityAdsError != null ? unityAdsError.name() : null, message);
+    }
+}
@@ -0,0 +1,121 @@
+// LuaStateBridge.java
+// UnityAds Plugin
+//
+
+package plugin.unityads;
+
+import com.naef.jnlua.LuaState;
+import com.naef.jnlua.LuaType;
+
+import com.ansca.corona.CoronaLua;
+
+import plugin.unityads.core.LuaBridge;
+import plugin.unityads.core.LuaValueType;
+
+/**
+ * Exposes a JNLua LuaState to the plugin core.
+ * <p>
+ * Lua functions are only called on the Lua thread, so a single instance is reused for every call.
+ */
+class LuaStateBridge implements LuaBridge {
+    private LuaState L = null;
+
+    // points the bridge to the Lua state of the current call
+    LuaStateBridge using(LuaState L) {
+        this.L = L;
+        return this;
+    }
+
+    @Override
+    public int getTop() {
+        return L.getTop();
+    }
+
+    @Override
+    public LuaValueType type(int index) {
+        LuaType type = L.type(index);
+
+        // JNLua returns null for non-valid indices
+        if (type == null) {
+            return LuaValueType.NONE;
+        }
+
+        switch (type) {
+            case NIL:
+                return LuaValueType.NIL;
+            case BOOLEAN:
+                return LuaValueType.BOOLEAN;
+            case LIGHTUSERDATA:
+                return LuaValueType.LIGHTUSERDATA;
+            case NUMBER:
+                return LuaValueType.NUMBER;
+            case STRING:
+                return LuaValueType.STRING;
+            case TABLE:
+                return LuaValueType.TABLE;
+            case FUNCTION:
+                return LuaValueType.FUNCTION;
+            case USERDATA:
+                return LuaValueType.USERDATA;
+            case THREAD:
+                return LuaValueType.THREAD;
+            default:
+                return LuaValueType.NONE;
+        }
+    }
+
+    @Override
+    public String typeName(int index) {
+        return L.typeName(index);
+    }
+
+    @Override
+    public String toString(int index) {
+        return L.toString(index);
+    }
+
+    @Override
+    public boolean toBoolean(int index) {
+        return L.toBoolean(index);
+    }
+
+    @Override
+    public double toNumber(int index) {
+        return L.toNumber(index);
+    }
+
+    @Override
+    public void pushNil() {
+        L.pushNil();
+    }
+
+    @Override
+    public void pushBoolean(boolean value) {
+        L.pushBoolean(value);
+    }
+
+    @Override
+    public void pushString(String value) {
+        L.pushString(value);
+    }
+
+    @Override
+    public boolean next(int index) {
+        return L.next(index);
+    }
+
+    @Override
+    public void pop(int count) {
+        L.pop(count);
+    }
+
+    @Override
+    public boolean isListener(int index, String provider) {
+        return CoronaLua.isListener(L, index, provider);
+    }
+
+    @Override
+    public int newRef(int index) {
+        return CoronaLua.newRef(L, index);
+    }
+}
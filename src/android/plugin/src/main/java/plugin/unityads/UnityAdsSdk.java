@@ -0,0 +1,83 @@
+// UnityAdsSdk.java
+// UnityAds Plugin
+//
+
+package plugin.unityads;
+
+import com.ansca.corona.CoronaActivity;
+import com.ansca.corona.CoronaEnvironment;
+
+// Plugin imports
+import com.unity3d.ads.UnityAds;
+import com.unity3d.ads.metadata.MetaData;
+
+import plugin.unityads.core.AdsSdk;
+import plugin.unityads.core.AdsSdkListener;
+import plugin.unityads.core.PlacementState;
+
+/**
+ * Forwards the plugin core's SDK calls to the Unity Ads Android SDK.
+ */
+class UnityAdsSdk implements AdsSdk {
+    @Override
+    public String getVersion() {
+        return UnityAds.getVersion();
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return UnityAds.isInitialized();
+    }
+
+    @Override
+    public void initialize(String gameId, boolean testMode, boolean perPlacementLoad, AdsSdkListener listener) {
+        CoronaActivity coronaActivity = CoronaEnvironment.getCoronaActivity();
+        if (coronaActivity != null) {
+            UnityAds.initialize(coronaActivity, gameId, new CoronaUnityAdsDelegate(listener), testMode, perPlacementLoad);
+        }
+    }
+
+    @Override
+    public void setListener(AdsSdkListener listener) {
+        UnityAds.setListener(listener != null ? new CoronaUnityAdsDelegate(listener) : null);
+    }
+
+    @Override
+    public boolean hasListener() {
+        return UnityAds.getListener() != null;
+    }
+
+    @Override
+    public boolean isReady(String placementId) {
+        return UnityAds.isReady(placementId);
+    }
+
+    @Override
+    public PlacementState getPlacementState(String placementId) {
+        UnityAds.PlacementState placementState = UnityAds.getPlacementState(placementId);
+        return placementState != null ? PlacementState.valueOf(placementState.name()) : null;
+    }
+
+    @Override
+    public void load(String placementId) {
+        UnityAds.load(placementId);
+    }
+
+    @Override
+    public boolean show(String placementId) {
+        CoronaActivity coronaActivity = CoronaEnvironment.getCoronaActivity();
+        if (coronaActivity == null) {
+            return false;
+        }
+
+        UnityAds.show(coronaActivity, placementId);
+        return true;
+    }
+
+    @Override
+    public void setHasUserConsent(boolean hasUserConsent) {
+        MetaData gdprMetaData = new MetaData(CoronaEnvironment.getApplicationContext());
+        gdprMetaData.set("gdpr.consent", hasUserConsent);
+        gdprMetaData.commit();
+    }
+}
@@ -302,6 +302,20 @@ UnityAdsPlugin::init( lua_State *L )
           return 0;
         }
       }
+      else if (UTF8IsEqual(key, "placements")) {
+        // Android only, the SDK loads all placements on iOS
+        if (lua_type(L, -1) != LUA_TTABLE) {
+          logMsg(L, ERROR_MSG, MsgFormat(@"options.placements (table) expected, got: %s", luaL_typename(L, -1)));
+          return 0;
+        }
+      }
+      else if (UTF8IsEqual(key, "maxPlacements")) {
+        // Android only, the plugin keeps no per-placement state on iOS
+        if (lua_type(L, -1) != LUA_TNUMBER) {
+          logMsg(L, ERROR_MSG, MsgFormat(@"options.maxPlacements (number) expected, got: %s", luaL_typename(L, -1)));
+          return 0;
+        }
+      }
       else {
         logMsg(L, ERROR_MSG, MsgFormat(@"Invalid option '%s'", key));
         return 0;